@@ -0,0 +1,156 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import android.hardware.Camera;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a camera is and what it supports : facing, sensor orientation and preview settings.
+ * <p>
+ * Facing and orientation are known without opening the camera, preview settings are only
+ * available once it has been opened.
+ */
+public class CameraCapabilities {
+    private final int mFacing;
+    private final int mOrientation;
+    private final List<int[]> mPreviewSizes;
+    private final List<int[]> mPreviewFpsRanges;
+    private final List<String> mFocusModes;
+    private final List<String> mFlashModes;
+
+    public CameraCapabilities(int facing, int orientation) {
+        this(facing, orientation, null, null, null, null);
+    }
+
+    private CameraCapabilities(int facing, int orientation, List<int[]> previewSizes, List<int[]> previewFpsRanges, List<String> focusModes, List<String> flashModes) {
+        mFacing = facing;
+        mOrientation = orientation;
+        mPreviewSizes = previewSizes;
+        mPreviewFpsRanges = previewFpsRanges;
+        mFocusModes = focusModes;
+        mFlashModes = flashModes;
+    }
+
+    /**
+     * Returns a copy holding the preview settings supported by the opened camera.
+     */
+    public CameraCapabilities withParameters(Camera.Parameters parameters) {
+        List<int[]> previewSizes = new ArrayList<int[]>();
+        List<Camera.Size> sizes = parameters.getSupportedPreviewSizes();
+        if (sizes != null) {
+            for (Camera.Size size : sizes) {
+                previewSizes.add(new int[]{size.width, size.height});
+            }
+        }
+
+        List<int[]> previewFpsRanges = new ArrayList<int[]>();
+        List<int[]> ranges = parameters.getSupportedPreviewFpsRange();
+        if (ranges != null) {
+            for (int[] range : ranges) {
+                previewFpsRanges.add(new int[]{range[0], range[1]});
+            }
+        }
+
+        return new CameraCapabilities(mFacing, mOrientation, previewSizes, previewFpsRanges,
+                copyOf(parameters.getSupportedFocusModes()), copyOf(parameters.getSupportedFlashModes()));
+    }
+
+    public int getFacing() {
+        return mFacing;
+    }
+
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    public boolean hasPreviewSettings() {
+        return mPreviewSizes != null;
+    }
+
+    /**
+     * Supported preview sizes as {width, height} pairs.
+     */
+    public List<int[]> getPreviewSizes() {
+        return mPreviewSizes != null ? mPreviewSizes : Collections.<int[]>emptyList();
+    }
+
+    /**
+     * Supported preview fps ranges as {min, max} pairs, scaled by 1000.
+     */
+    public List<int[]> getPreviewFpsRanges() {
+        return mPreviewFpsRanges != null ? mPreviewFpsRanges : Collections.<int[]>emptyList();
+    }
+
+    public List<String> getFocusModes() {
+        return mFocusModes != null ? mFocusModes : Collections.<String>emptyList();
+    }
+
+    public List<String> getFlashModes() {
+        return mFlashModes != null ? mFlashModes : Collections.<String>emptyList();
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("facing", mFacing);
+        json.put("orientation", mOrientation);
+        if (hasPreviewSettings()) {
+            json.put("previewSizes", toJSONArray(mPreviewSizes));
+            json.put("previewFpsRanges", toJSONArray(mPreviewFpsRanges));
+            json.put("focusModes", new JSONArray(mFocusModes));
+            json.put("flashModes", new JSONArray(mFlashModes));
+        }
+        return json;
+    }
+
+    public static CameraCapabilities fromJSON(JSONObject json) throws JSONException {
+        int facing = json.getInt("facing");
+        int orientation = json.getInt("orientation");
+        if (json.has("previewSizes")) {
+            return new CameraCapabilities(facing, orientation,
+                    toPairs(json.getJSONArray("previewSizes")),
+                    toPairs(json.getJSONArray("previewFpsRanges")),
+                    toStrings(json.getJSONArray("focusModes")),
+                    toStrings(json.getJSONArray("flashModes")));
+        } else {
+            return new CameraCapabilities(facing, orientation);
+        }
+    }
+
+    private static List<String> copyOf(List<String> values) {
+        return values != null ? new ArrayList<String>(values) : new ArrayList<String>();
+    }
+
+    private static JSONArray toJSONArray(List<int[]> pairs) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (int[] pair : pairs) {
+            JSONArray item = new JSONArray();
+            item.put(pair[0]);
+            item.put(pair[1]);
+            array.put(item);
+        }
+        return array;
+    }
+
+    private static List<int[]> toPairs(JSONArray array) throws JSONException {
+        List<int[]> pairs = new ArrayList<int[]>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONArray item = array.getJSONArray(i);
+            pairs.add(new int[]{item.getInt(0), item.getInt(1)});
+        }
+        return pairs;
+    }
+
+    private static List<String> toStrings(JSONArray array) throws JSONException {
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < array.length(); i++) {
+            strings.add(array.getString(i));
+        }
+        return strings;
+    }
+}
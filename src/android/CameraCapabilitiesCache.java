@@ -0,0 +1,159 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Camera capabilities keyed by camera id, persisted in a file.
+ * <p>
+ * The file is tagged with a device fingerprint and ignored when the fingerprint changed,
+ * after a system update for instance.
+ */
+public class CameraCapabilitiesCache {
+    private static final int VERSION = 1;
+    private static final String CHARSET = "UTF-8";
+
+    private final File mFile;
+    private final String mFingerprint;
+
+    private List<CameraCapabilities> mCameras = null;
+    private boolean mLoaded = false;
+
+    public CameraCapabilitiesCache(File file, String fingerprint) {
+        mFile = file;
+        mFingerprint = fingerprint;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Reads the cache file once. Returns true if cameras were read from it.
+     */
+    public synchronized boolean load() {
+        if (!mLoaded) {
+            mLoaded = true;
+            if (mFile != null && mFile.exists()) {
+                try {
+                    JSONObject json = new JSONObject(read(mFile));
+                    if (json.getInt("version") == VERSION && mFingerprint.equals(json.getString("fingerprint"))) {
+                        JSONArray cameras = json.getJSONArray("cameras");
+                        List<CameraCapabilities> capabilities = new ArrayList<CameraCapabilities>();
+                        for (int i = 0; i < cameras.length(); i++) {
+                            capabilities.add(CameraCapabilities.fromJSON(cameras.getJSONObject(i)));
+                        }
+                        mCameras = capabilities;
+                    }
+                } catch (IOException e) {
+                    mCameras = null;
+                } catch (JSONException e) {
+                    mCameras = null;
+                }
+            }
+        }
+        return mCameras != null;
+    }
+
+    /**
+     * Writes the cache file, replacing it atomically.
+     */
+    public void save() throws IOException {
+        String content;
+
+        synchronized (this) {
+            if (mFile == null) {
+                return;
+            }
+            try {
+                JSONArray cameras = new JSONArray();
+                if (mCameras != null) {
+                    for (CameraCapabilities capabilities : mCameras) {
+                        cameras.put(capabilities.toJSON());
+                    }
+                }
+                JSONObject json = new JSONObject();
+                json.put("version", VERSION);
+                json.put("fingerprint", mFingerprint);
+                json.put("cameras", cameras);
+                content = json.toString();
+            } catch (JSONException e) {
+                throw new IOException("Cannot serialize camera capabilities : " + e.getMessage());
+            }
+        }
+
+        synchronized (mFile) {
+            File tmpFile = new File(mFile.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                out.write(content.getBytes(CHARSET));
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(mFile)) {
+                throw new IOException("Cannot rename " + tmpFile.getPath());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cameras, or -1 if the cameras are not known yet.
+     */
+    public synchronized int getCameraCount() {
+        return mCameras != null ? mCameras.size() : -1;
+    }
+
+    /**
+     * Sets every camera of the device, indexed by camera id.
+     */
+    public synchronized void setCameras(List<CameraCapabilities> cameras) {
+        mCameras = new ArrayList<CameraCapabilities>(cameras);
+    }
+
+    public synchronized CameraCapabilities get(int cameraId) {
+        if (mCameras != null && cameraId >= 0 && cameraId < mCameras.size()) {
+            return mCameras.get(cameraId);
+        } else {
+            return null;
+        }
+    }
+
+    public synchronized void put(int cameraId, CameraCapabilities capabilities) {
+        if (mCameras != null && cameraId >= 0 && cameraId < mCameras.size()) {
+            mCameras.set(cameraId, capabilities);
+        }
+    }
+
+    /**
+     * Forgets every camera, the next start queries them again.
+     */
+    public synchronized void clear() {
+        mCameras = null;
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+            return out.toString(CHARSET);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.util.Arrays;
+
+/**
+ * Opens cameras on a dedicated thread and reports the result through a callback.
+ * <p>
+ * Each request tries its camera ids in order, retries after a delay when none could be opened
+ * and fails once its timeout expires. A camera opened for a request that was cancelled or
+ * that timed out in the meantime is released right away.
+ */
+public class CameraOpener {
+
+    public interface Callback {
+        /**
+         * Called on the callback handler thread with the opened camera.
+         */
+        void onCameraOpened(Camera camera, int cameraId, int attempts);
+
+        /**
+         * Called on the callback handler thread when no camera could be opened in time.
+         */
+        void onCameraOpenFailed(String message, int attempts);
+    }
+
+    private final Handler mCallbackHandler;
+    private final long mTimeout;
+    private final int mMaxAttempts;
+    private final long mRetryDelay;
+
+    private HandlerThread mThread = null;
+    private Handler mHandler = null;
+    private Request mRequest = null;
+
+    /**
+     * @param callbackHandler handler on which callbacks and timeouts run.
+     * @param timeout         maximum duration of a request, in milliseconds.
+     * @param maxAttempts     maximum number of attempts per request.
+     * @param retryDelay      delay between two attempts, in milliseconds.
+     */
+    public CameraOpener(Handler callbackHandler, long timeout, int maxAttempts, long retryDelay) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid number of attempts : " + maxAttempts);
+        }
+        mCallbackHandler = callbackHandler;
+        mTimeout = timeout;
+        mMaxAttempts = maxAttempts;
+        mRetryDelay = retryDelay;
+    }
+
+    /**
+     * Starts the opener thread, if needed.
+     */
+    public synchronized void prepare() {
+        if (mThread == null) {
+            mThread = new HandlerThread("CanvasCameraOpener");
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+    }
+
+    /**
+     * Opens the first available camera among the given ids. A pending request for the same ids
+     * is taken over by the new callback instead of opening the camera twice, any other pending
+     * request is cancelled.
+     */
+    public synchronized void open(int[] cameraIds, Callback callback) {
+        prepare();
+
+        if (mRequest != null && Arrays.equals(mRequest.cameraIds, cameraIds)) {
+            mRequest.callback = callback;
+            return;
+        }
+
+        cancel();
+
+        final Request request = new Request(cameraIds.clone(), callback);
+        mRequest = request;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                attempt(request);
+            }
+        });
+        mCallbackHandler.postDelayed(request.timeout, mTimeout);
+    }
+
+    /**
+     * Cancels the pending request, if any. Its camera is released if it opens later on.
+     */
+    public synchronized void cancel() {
+        if (mRequest != null) {
+            mCallbackHandler.removeCallbacks(mRequest.timeout);
+            mRequest = null;
+        }
+    }
+
+    public synchronized boolean isOpening() {
+        return mRequest != null;
+    }
+
+    /**
+     * Cancels the pending request and stops the opener thread.
+     */
+    public synchronized void quit() {
+        cancel();
+        if (mThread != null) {
+            mThread.quit();
+            mThread = null;
+            mHandler = null;
+        }
+    }
+
+    private synchronized boolean isPending(Request request) {
+        return mRequest == request;
+    }
+
+    /**
+     * Ends a request. Returns its callback, or null if it had already ended.
+     */
+    private synchronized Callback complete(Request request) {
+        if (mRequest != request) {
+            return null;
+        }
+        mCallbackHandler.removeCallbacks(request.timeout);
+        mRequest = null;
+        return request.callback;
+    }
+
+    // Runs on the opener thread.
+    private void attempt(final Request request) {
+        if (!isPending(request)) {
+            return;
+        }
+
+        request.attempts++;
+
+        Camera camera = null;
+        int cameraId = -1;
+        String message = "No camera to open.";
+
+        for (int id : request.cameraIds) {
+            try {
+                camera = Camera.open(id);
+                cameraId = id;
+                break;
+            } catch (RuntimeException e) {
+                message = e.getMessage();
+            }
+        }
+
+        if (camera != null) {
+            final Callback callback = complete(request);
+            if (callback == null) {
+                // Cancelled or timed out while opening.
+                camera.release();
+                return;
+            }
+            final Camera openedCamera = camera;
+            final int openedCameraId = cameraId;
+            final int attempts = request.attempts;
+            mCallbackHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onCameraOpened(openedCamera, openedCameraId, attempts);
+                }
+            });
+        } else if (request.attempts < mMaxAttempts) {
+            synchronized (this) {
+                if (mRequest == request && mHandler != null) {
+                    mHandler.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            attempt(request);
+                        }
+                    }, mRetryDelay);
+                }
+            }
+        } else {
+            fail(request, message);
+        }
+    }
+
+    private void fail(Request request, final String message) {
+        final Callback callback = complete(request);
+        if (callback != null) {
+            final int attempts = request.attempts;
+            mCallbackHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onCameraOpenFailed(message, attempts);
+                }
+            });
+        }
+    }
+
+    private class Request {
+        final int[] cameraIds;
+        final Runnable timeout;
+        volatile Callback callback;
+        volatile int attempts = 0;
+
+        Request(int[] cameraIds, Callback callback) {
+            this.cameraIds = cameraIds;
+            this.callback = callback;
+            this.timeout = new Runnable() {
+                @Override
+                public void run() {
+                    fail(Request.this, "Camera opening timed out.");
+                }
+            };
+        }
+    }
+}
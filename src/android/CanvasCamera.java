@@ -13,8 +13,10 @@ import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.graphics.YuvImage;
 import android.hardware.Camera;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
 import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Base64;
 import android.util.Log;
 import android.view.Surface;
@@ -35,12 +37,22 @@ import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface {
     private static final String TAG = "CanvasCamera";
@@ -56,13 +68,48 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     protected final String K_HAS_THUMBNAIL_KEY = "hasThumbnail";
     protected final String K_THUMBNAIL_RATIO_KEY = "thumbnailRatio";
     protected final String K_LENS_ORIENTATION_KEY = "cameraFacing";
+    protected final String K_MAX_FRAMES_IN_FLIGHT_KEY = "maxFramesInFlight";
+    protected final String K_FOCUS_MODE_KEY = "focusMode";
+    protected final String K_QUALITY_KEY = "quality";
+    protected final String K_ADAPTIVE_QUALITY_KEY = "adaptiveQuality";
+    protected final String K_STRIPS_KEY = "strips";
+    protected final String K_MODE_KEY = "mode";
+    protected final String K_MOTION_THRESHOLD_KEY = "motionThreshold";
+    protected final String K_KEEP_ALIVE_INTERVAL_KEY = "keepAliveInterval";
+    protected final String K_DELTA_KEY = "delta";
+    protected final String K_KEYFRAME_INTERVAL_KEY = "keyframeInterval";
+    protected final String K_ROI_KEY = "roi";
+    protected final String K_X_KEY = "x";
+    protected final String K_Y_KEY = "y";
+    protected final String K_RENDITIONS_KEY = "renditions";
+    protected final String K_NAME_KEY = "name";
+    protected final String K_FORMAT_KEY = "format";
+    protected final String K_FPS_DIVISOR_KEY = "fpsDivisor";
+    protected final String K_CROP_KEY = "crop";
 
     private static final int SEC_START_CAPTURE = 0;
     private static final int SEC_STOP_CAPTURE = 1;
     private static final int SEC_FLASH_MODE = 2;
     private static final int SEC_CAMERA_POSITION = 3;
+    private static final int SEC_CONFIGURE = 4;
+
+    // Camera opening policy.
+    private static final long CAMERA_OPEN_TIMEOUT = 5000;
+    private static final int CAMERA_OPEN_ATTEMPTS = 3;
+    private static final long CAMERA_OPEN_RETRY_DELAY = 250;
+    // A prewarmed camera not used by a capture within this delay is released.
+    private static final long CAMERA_PREWARM_TIMEOUT = 10000;
+
+    // Frames processed in parallel by default, at most one per core.
+    private static final int MAX_DEFAULT_FRAMES_IN_FLIGHT = 4;
+
+    // Frames of at least this many pixels are converted in parallel strips by default.
+    private static final int STRIP_MIN_PIXELS = 1280 * 720;
+    private static final int MAX_DEFAULT_STRIPS = 8;
+
+    // Preview buffers needed on top of the frames in flight : one queued to the camera, one pending.
+    private static final int FRAME_BUFFER_POOL_EXTRA_SIZE = 2;
 
-    private final static String[] FILENAMES = {"fullsize", "thumbnail"};
     private final static String[] PERMISSIONS = {Manifest.permission.CAMERA, Manifest.permission.READ_EXTERNAL_STORAGE, Manifest.permission.WRITE_EXTERNAL_STORAGE};
 
     protected int mFps;
@@ -71,23 +118,41 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     protected String mUse;
     protected int mCameraFacing;
     protected String mFlashMode;
+    protected String mFocusMode;
     protected int mCanvasHeight;
     protected int mCanvasWidth;
     protected int mCaptureHeight;
     protected int mCaptureWidth;
     protected boolean mHasThumbnail;
     protected double mThumbnailRatio;
+    protected int mMaxFramesInFlight;
+    protected int mQuality;
+    protected boolean mAdaptiveQuality;
+    protected int mStrips;
+    protected String mMode;
+    protected double mMotionThreshold;
+    protected long mKeepAliveInterval;
+    protected boolean mDelta;
+    protected long mKeyframeInterval;
+    // Region of interest, in canvas coordinates. Null for the whole frame.
+    protected volatile YuvTransformer.Region mRoi;
+    protected List<Rendition> mRenditions;
+
+    // Requested frame rate, possibly fractional. mFps is its rounded up value, for the camera and file slots.
+    private double mRequestedFps;
 
     private JSONArray mArgs;
     private CallbackContext mCurrentCallbackContext;
     private CallbackContext mStartCaptureCallbackContext;
 
     private File mDir;
-    private int mFileId = 0;
+    private final Map<String, FileRingBuffer> mImageFiles = new HashMap<String, FileRingBuffer>();
     private int mDisplayOrientation = 0;
+    private volatile FrameOrientation mFrameOrientation = new FrameOrientation(0, "unknown");
 
     private Camera mCamera;
     private int mOrientation;
+    private int mDisplayRotation = -1;
     private int mCameraId = 0;
     private int mPreviewFormat;
     private int[] mPreviewFpsRange;
@@ -97,7 +162,63 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
 
     private Activity mActivity = null;
     private TextureView mTextureView = null;
-    private CameraHandlerThread mThread = null;
+    private CameraOpener mCameraOpener = null;
+    private CameraOpener.Callback mCameraOpenCallback = null;
+    private CameraOpener.Callback mCameraPrewarmCallback = null;
+    private Camera mPrewarmedCamera = null;
+    private int mPrewarmedCameraId = -1;
+    private Handler mMainHandler = null;
+
+    private volatile FrameBufferPool mFrameBufferPool = null;
+    private volatile FrameScheduler<PreviewFrame> mFrameScheduler = null;
+    private volatile FrameRateGovernor mFrameRateGovernor = null;
+    private volatile MotionDetector mMotionDetector = null;
+    private volatile TileTracker mTileTracker = null;
+    private volatile JpegQualityController mJpegQualityController = null;
+    private volatile ExecutorService mThumbnailExecutor = null;
+    private StripConverter mStripConverter = null;
+    private volatile MjpegServer mMjpegServer = null;
+    private volatile int mSessionHighWaterMark = 0;
+
+    private final Map<String, YuvTransformer> mYuvTransformers = new HashMap<String, YuvTransformer>();
+
+    private CameraCapabilitiesCache mCameraCapabilitiesCache = null;
+    private boolean mCachedCapabilities = false;
+    private volatile long mCaptureStartTime = 0;
+    private volatile long mTimeToOpen = -1;
+    private volatile int mCameraOpenAttempts = 0;
+    private final AtomicLong mTimeToFirstPreview = new AtomicLong(-1);
+    private final AtomicLong mTimeToFirstFrame = new AtomicLong(-1);
+
+    private final PipelineStats mPipelineStats = new PipelineStats();
+    private final AtomicLong mFrameIds = new AtomicLong(0);
+
+    private final FrameSequencer.Delivery<ImageResult> mImageDelivery = new FrameSequencer.Delivery<ImageResult>() {
+        @Override
+        public void onDeliver(long frameId, ImageResult image) {
+            deliverImage(image);
+            MotionDetector motionDetector = mMotionDetector;
+            if (motionDetector != null && "fullsize".equals(image.name)) {
+                // Still frames are compared with what was actually sent.
+                motionDetector.onEmitted(frameId);
+            }
+        }
+
+        @Override
+        public void onDiscard(long frameId, ImageResult image) {
+            if (LOGGING) Log.v(TAG, "Frame " + frameId + " " + image.name + " discarded, a newer frame was delivered.");
+            mPipelineStats.increment(PipelineStats.COUNTER_LATE);
+            resetTileTracker();
+        }
+    };
+
+    // Pull mode : newest preview frame kept for the next request, and requests waiting for a frame.
+    private final Object mPullLock = new Object();
+    private PreviewFrame mLatestFrame = null;
+    private final List<CallbackContext> mFrameRequests = new ArrayList<CallbackContext>();
+
+    // Frames are processed in parallel but delivered in capture order.
+    private final FrameSequencer<ImageResult> mFrameSequencer = new FrameSequencer<ImageResult>(mImageDelivery);
 
     @Override
     public String getFilenameSuffix() {
@@ -112,191 +233,1152 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
 
     private final Camera.PreviewCallback mCameraPreviewCallback = new Camera.PreviewCallback() {
         @Override
-        public void onPreviewFrame(final byte[] data, Camera camera) {
-            Runnable renderFrame = new Runnable() {
-                public void run() {
-                    if (mPreviewing && data.length > 0) {
-                        // Get display orientation.
-                        int displayOrientation = getDisplayOrientation();
-                        // Getting output file paths.
-                        Map<String, File> files = getImageFilesPaths();
-
-                        // JSON output for images.
-                        JSONObject images = new JSONObject();
-
-                        // Creating fullsize image.
-                        byte[] fullsizeData = dataToJpeg(data, mPreviewSize.width, mPreviewSize.height);
-
-                        fullsizeData = getResizedAndRotatedImage(fullsizeData, mCanvasWidth, mCanvasHeight, displayOrientation);
-
-                        // JSON output for fullsize image
-                        JSONObject fullsize = new JSONObject();
-
-                        if (mUse != null) {
-                            if ("data".equals(mUse)) {
-                                String fullsizeDataToB64 = "data:image/jpeg;base64," + Base64.encodeToString(fullsizeData, Base64.DEFAULT);
-                                try {
-                                    fullsize.put("data", fullsizeDataToB64);
-                                } catch (JSONException e) {
-                                    if (LOGGING)
-                                        Log.e(TAG, "Cannot put data.output.images.fullsize.data  into JSON result : " + e.getMessage());
-                                }
-                            }
-                            if ("file".equals(mUse) && saveImage(fullsizeData, files.get("fullsize"))) {
-                                try {
-                                    fullsize.put("file", files.get("fullsize").getPath());
-                                } catch (JSONException e) {
-                                    if (LOGGING)
-                                        Log.e(TAG, "Cannot put data.output.images.fullsize.path into JSON result : " + e.getMessage());
-                                }
-                            }
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            // Every camera frame gets an id, gaps in delivered ids are frames skipped natively.
+            final long frameId = mFrameIds.incrementAndGet();
+            final long timestamp = System.nanoTime();
 
-                            addPluginResultDataOutput(fullsizeData, fullsize);
-                        }
+            if (mTimeToFirstPreview.get() < 0) {
+                mTimeToFirstPreview.compareAndSet(-1, timestamp - mCaptureStartTime);
+            }
 
-                        if (fullsize.length() > 0) {
-                            try {
-                                images.put("fullsize", fullsize);
-
-                                try {
-                                    fullsize.put("rotation", displayOrientation);
-                                } catch (JSONException e) {
-                                    if (LOGGING)
-                                        Log.e(TAG, "Cannot put data.output.images.fullsize.rotation into JSON result : " + e.getMessage());
-                                }
-
-                                try {
-                                    fullsize.put("orientation", getCurrentOrientationToString());
-                                } catch (JSONException e) {
-                                    if (LOGGING)
-                                        Log.e(TAG, "Cannot put data.output.images.fullsize.orientation into JSON result : " + e.getMessage());
-                                }
-
-                                try {
-                                    fullsize.put("timestamp", (new java.util.Date()).getTime());
-                                } catch (JSONException e) {
-                                    if (LOGGING)
-                                        Log.e(TAG, "Cannot put data.output.images.fullsize.timestamp into JSON result : " + e.getMessage());
-                                }
-
-                            } catch (JSONException e) {
-                                if (LOGGING)
-                                    Log.e(TAG, "Cannot put data.output.images.fullsize into JSON result : " + e.getMessage());
-                            }
+            mPipelineStats.increment(PipelineStats.COUNTER_RECEIVED);
 
-                            if (mHasThumbnail) {
-                                // Creating thumbnail image
-                                byte[] thumbnailData = getResizedImage(fullsizeData, mThumbnailRatio);
-
-                                // JSON output for thumbnail image
-                                JSONObject thumbnail = new JSONObject();
-
-                                if (mUse != null) {
-                                    if ("data".equals(mUse)) {
-                                        String thumbnailDataToB64 = "data:image/jpeg;base64," + Base64.encodeToString(thumbnailData, Base64.DEFAULT);
-                                        try {
-                                            thumbnail.put("data", thumbnailDataToB64);
-                                        } catch (JSONException e) {
-                                            if (LOGGING)
-                                                Log.e(TAG, "Cannot put data.output.images.thumbnail.data into JSON result : " + e.getMessage());
-                                        }
-                                    }
-                                    if ("file".equals(mUse) && saveImage(thumbnailData, files.get("thumbnail"))) {
-                                        try {
-                                            thumbnail.put("file", files.get("thumbnail").getPath());
-                                        } catch (JSONException e) {
-                                            if (LOGGING)
-                                                Log.e(TAG, "Cannot put data.output.images.thumbnail.path into JSON result : " + e.getMessage());
-                                        }
-                                    }
-                                }
-
-                                if (thumbnail.length() > 0) {
-                                    try {
-                                        images.put("thumbnail", thumbnail);
-
-                                        try {
-                                            thumbnail.put("rotation", displayOrientation);
-                                        } catch (JSONException e) {
-                                            if (LOGGING)
-                                                Log.e(TAG, "Cannot put data.output.images.thumbnail.rotation into JSON result : " + e.getMessage());
-                                        }
-
-                                        try {
-                                            thumbnail.put("orientation", getCurrentOrientationToString());
-                                        } catch (JSONException e) {
-                                            if (LOGGING)
-                                                Log.e(TAG, "Cannot put data.output.images.thumbnail.orientation into JSON result : " + e.getMessage());
-                                        }
-
-                                        try {
-                                            thumbnail.put("timestamp", (new java.util.Date()).getTime());
-                                        } catch (JSONException e) {
-                                            if (LOGGING)
-                                                Log.e(TAG, "Cannot put data.output.images.thumbnail.timestamp into JSON result : " + e.getMessage());
-                                        }
-                                    } catch (JSONException e) {
-                                        if (LOGGING)
-                                            Log.e(TAG, "Cannot put data.output.images.thumbnail into JSON result : " + e.getMessage());
-                                    }
-                                }
-                            }
+            FrameBufferPool frameBufferPool = mFrameBufferPool;
+            if (frameBufferPool != null) {
+                frameBufferPool.acquire(data);
+            }
 
-                            // JSON output
-                            JSONObject output = new JSONObject();
+            if (isPullMode()) {
+                onPullFrame(new PreviewFrame(data, camera, frameId, timestamp, -1));
+                return;
+            }
 
-                            try {
-                                output.put("images", images);
-                            } catch (JSONException e) {
-                                if (LOGGING)
-                                    Log.e(TAG, "Cannot put data.output.images into JSON result : " + e.getMessage());
-                            }
+            // Throttles frames before any conversion work.
+            FrameRateGovernor frameRateGovernor = mFrameRateGovernor;
+            if (frameRateGovernor != null && !frameRateGovernor.accept(timestamp)) {
+                mPipelineStats.increment(PipelineStats.COUNTER_THROTTLED);
+                recycleFrameBuffer(data, camera);
+                return;
+            }
 
-                            if (mPreviewing) {
-                                PluginResult result = new PluginResult(PluginResult.Status.OK, getPluginResultMessage("OK", output));
-                                result.setKeepCallback(true);
-                                mStartCaptureCallbackContext.sendPluginResult(result);
-                            }
-                        }
-                    }
+            // Skips still frames before any conversion work too.
+            double motion = -1;
+            MotionDetector motionDetector = mMotionDetector;
+            Camera.Size previewSize = mPreviewSize;
+            if (motionDetector != null && previewSize != null) {
+                // YV12 luma rows are 16 bytes aligned.
+                int stride = YuvTransformer.getLumaStride(mPreviewFormat, previewSize.width);
+                boolean moved = motionDetector.accept(frameId, data, previewSize.width, previewSize.height, stride, timestamp);
+                motion = motionDetector.getLastScore();
+                if (!moved) {
+                    mPipelineStats.increment(PipelineStats.COUNTER_STILL);
+                    recycleFrameBuffer(data, camera);
+                    return;
                 }
-            };
+            }
 
-            cordova.getThreadPool().submit(renderFrame);
+            scheduleFrame(new PreviewFrame(data, camera, frameId, timestamp, motion));
         }
     };
 
-    private final TextureView.SurfaceTextureListener mSurfaceTextureListener = new TextureView.SurfaceTextureListener() {
-        public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
-            mCamera = getCameraInstance();
+    private void scheduleFrame(PreviewFrame frame) {
+        FrameScheduler<PreviewFrame> frameScheduler = mFrameScheduler;
+        if (frameScheduler != null) {
+            mFrameSequencer.begin(frame.id);
+            frameScheduler.submit(frame);
+        } else {
+            recycleFrameBuffer(frame.data, frame.camera);
+        }
+    }
+
+    private boolean isPullMode() {
+        return "pull".equals(mMode);
+    }
+
+    /**
+     * In pull mode, keeps the newest preview frame without converting it, or serves the requests waiting for a frame.
+     */
+    private void onPullFrame(PreviewFrame frame) {
+        PreviewFrame staleFrame;
+        List<CallbackContext> frameRequests = null;
+
+        synchronized (mPullLock) {
+            staleFrame = mLatestFrame;
+            if (mFrameRequests.isEmpty()) {
+                mLatestFrame = frame;
+            } else {
+                mLatestFrame = null;
+                frameRequests = new ArrayList<CallbackContext>(mFrameRequests);
+                mFrameRequests.clear();
+            }
+        }
+
+        if (staleFrame != null) {
+            recycleFrameBuffer(staleFrame.data, staleFrame.camera);
+        }
+
+        if (frameRequests != null) {
+            serveFrameRequests(frame, frameRequests);
+        }
+    }
 
-            if (mCamera != null) {
+    /**
+     * Converts the newest preview frame and sends it to the capture callback. Without a preview
+     * frame yet, the request is served by the next one.
+     */
+    private void requestFrame(CallbackContext requestFrameCallbackContext) {
+        if (mStartCaptureCallbackContext == null) {
+            requestFrameCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION, getPluginResultMessage("Could not request frame. No capture in progress !")));
+            return;
+        }
+        if (!isPullMode()) {
+            requestFrameCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION, getPluginResultMessage("Could not request frame. Frames are only requested in pull mode !")));
+            return;
+        }
+
+        PreviewFrame frame;
+
+        synchronized (mPullLock) {
+            frame = mLatestFrame;
+            mLatestFrame = null;
+            if (frame == null) {
+                mFrameRequests.add(requestFrameCallbackContext);
+            }
+        }
 
-                mTextureView.setVisibility(View.INVISIBLE);
-                mTextureView.setAlpha(0);
+        if (frame != null) {
+            List<CallbackContext> frameRequests = new ArrayList<CallbackContext>();
+            frameRequests.add(requestFrameCallbackContext);
+            serveFrameRequests(frame, frameRequests);
+        } else {
+            if (LOGGING) Log.v(TAG, "Frame request waiting for the next preview frame.");
+        }
+    }
+
+    /**
+     * Sets the region of interest of the next frames, or the whole frame when null.
+     */
+    private void roi(JSONArray args, CallbackContext roiCallbackContext) {
+        try {
+            mRoi = parseRoi(args.isNull(0) ? null : args.getJSONObject(0));
+        } catch (JSONException e) {
+            if (LOGGING) Log.e(TAG, "Failed to set region of interest : " + e.getMessage());
+            roiCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, getPluginResultMessage(e.getMessage())));
+            return;
+        }
+
+        if (LOGGING) Log.i(TAG, "Region of interest set.");
+        if (mStartCaptureCallbackContext != null) {
+            sendSessionMessage();
+        }
+        roiCallbackContext.success(getPluginResultMessage("Region of interest set."));
+    }
+
+    /**
+     * Parses a normalized {x, y, width, height} rectangle. Returns null for the whole frame.
+     */
+    private YuvTransformer.Region parseRoi(JSONObject roi) throws JSONException {
+        if (roi == null) {
+            return null;
+        }
+        YuvTransformer.Region region = new YuvTransformer.Region(roi.optDouble(K_X_KEY, 0), roi.optDouble(K_Y_KEY, 0),
+                roi.optDouble(K_WIDTH_KEY, 1), roi.optDouble(K_HEIGHT_KEY, 1));
+        if (region.width <= 0 || region.height <= 0) {
+            throw new JSONException("Empty region of interest.");
+        }
+        return region.isFull() ? null : region;
+    }
+
+    /**
+     * Parses the renditions option : {name, width, height, format, quality, fpsDivisor, use, crop} objects.
+     */
+    private List<Rendition> parseRenditions(JSONArray renditions) throws JSONException {
+        // JPEG renditions are sent like the fullsize image, or as binaries when it is raw or streamed.
+        String defaultTransport = "data".equals(mUse) || "binary".equals(mUse) || "file".equals(mUse) ? mUse : "binary";
+        List<Rendition> parsedRenditions = new ArrayList<Rendition>();
+        List<String> names = new ArrayList<String>();
+        names.add("fullsize");
+        names.add("thumbnail");
+
+        for (int i = 0; i < renditions.length(); i++) {
+            JSONObject rendition = renditions.getJSONObject(i);
+            String name = rendition.getString(K_NAME_KEY);
+            // Names are used in image file names.
+            if (!name.matches("[A-Za-z0-9_]+") || names.contains(name)) {
+                throw new JSONException("Invalid rendition name : " + name + ".");
+            }
+            names.add(name);
+
+            String transport = rendition.optString(K_USE_KEY, defaultTransport);
+            if ("stream".equals(transport)) {
+                // The stream server only serves the fullsize and thumbnail images.
+                throw new JSONException("Invalid rendition use : " + transport + ", renditions cannot be streamed.");
+            } else if (!"data".equals(transport) && !"binary".equals(transport) && !"file".equals(transport)) {
+                throw new JSONException("Invalid rendition use : " + transport + ".");
+            }
+
+            parsedRenditions.add(new Rendition(name,
+                    rendition.optInt(K_WIDTH_KEY, 0),
+                    rendition.optInt(K_HEIGHT_KEY, 0),
+                    rendition.optString(K_FORMAT_KEY, Rendition.FORMAT_JPEG),
+                    rendition.optInt(K_QUALITY_KEY, 0),
+                    rendition.optInt(K_FPS_DIVISOR_KEY, 1),
+                    transport,
+                    rendition.optBoolean(K_CROP_KEY, false)));
+        }
+
+        return parsedRenditions;
+    }
+
+    private void serveFrameRequests(PreviewFrame frame, List<CallbackContext> frameRequests) {
+        // Answered before the frame is scheduled, so that the id is known when the frame arrives.
+        for (CallbackContext frameRequest : frameRequests) {
+            JSONObject pluginResultMessage = new JSONObject();
+            try {
+                pluginResultMessage.put("message", "OK");
+                pluginResultMessage.put("frameId", frame.id);
+            } catch (JSONException e) {
+                if (LOGGING) Log.e(TAG, "Cannot put data.frameId into JSON result : " + e.getMessage());
+            }
+            frameRequest.success(pluginResultMessage);
+        }
+        scheduleFrame(frame);
+    }
+
+    /**
+     * Gives the preview frame kept for pull requests back to the camera.
+     */
+    private void releaseLatestFrame() {
+        PreviewFrame frame;
+
+        synchronized (mPullLock) {
+            frame = mLatestFrame;
+            mLatestFrame = null;
+        }
+
+        if (frame != null) {
+            recycleFrameBuffer(frame.data, frame.camera);
+        }
+    }
+
+    private void cancelFrameRequests(String message) {
+        List<CallbackContext> frameRequests;
+
+        synchronized (mPullLock) {
+            frameRequests = new ArrayList<CallbackContext>(mFrameRequests);
+            mFrameRequests.clear();
+        }
+
+        for (CallbackContext frameRequest : frameRequests) {
+            frameRequest.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION, getPluginResultMessage(message)));
+        }
+    }
+
+    private final FrameScheduler.FrameHandler<PreviewFrame> mFrameHandler = new FrameScheduler.FrameHandler<PreviewFrame>() {
+        @Override
+        public void onFrame(PreviewFrame frame) {
+            try {
+                renderFrame(frame);
+            } finally {
+                mFrameSequencer.end(frame.id);
+                recycleFrameBuffer(frame.data, frame.camera);
+            }
+        }
+
+        @Override
+        public void onFrameDropped(PreviewFrame frame) {
+            if (LOGGING) Log.v(TAG, "Frame dropped.");
+            mPipelineStats.increment(PipelineStats.COUNTER_DROPPED);
+            MotionDetector motionDetector = mMotionDetector;
+            if (motionDetector != null) {
+                motionDetector.onDropped(frame.id);
+            }
+            mFrameSequencer.end(frame.id);
+            recycleFrameBuffer(frame.data, frame.camera);
+        }
+
+        @Override
+        public void onFrameFailed(PreviewFrame frame, RuntimeException e) {
+            if (LOGGING) Log.e(TAG, "Frame " + frame.id + " failed : " + e.getMessage());
+            mPipelineStats.increment(PipelineStats.COUNTER_FAILED);
+        }
+    };
+
+    private void renderFrame(final PreviewFrame frame) {
+        byte[] data = frame.data;
+        if (mPreviewing && data.length > 0) {
+            final long frameStartTime = System.nanoTime();
+            // Orientation is read once, so that a configuration change never applies to half a frame.
+            final FrameOrientation frameOrientation = mFrameOrientation;
+            final int displayOrientation = frameOrientation.displayOrientation;
+            // Same JPEG quality for both images of a frame.
+            final int quality = getJpegQuality();
+
+            Future<?> thumbnailTask = null;
+            boolean rendered = true;
+
+            if (YuvTransformer.isSupportedFormat(mPreviewFormat)) {
+                // Scale, mirror and rotate the frame once in YUV space.
+                YuvTransformer fullsizeTransformer = getYuvTransformer(mPreviewSize.width, mPreviewSize.height, mCanvasWidth, mCanvasHeight, displayOrientation);
+                final int width = fullsizeTransformer.getOutputWidth();
+                final int height = fullsizeTransformer.getOutputHeight();
+                final boolean luma = "luma".equals(mUse);
+                final List<Rendition> renditions = getFrameRenditions();
+                // In luma mode, the frame keeps its chroma when a rendition needs it.
+                final byte[] yuvData = transformFrame(fullsizeTransformer, data, luma && !hasChroma(renditions));
+
+                final int thumbnailWidth = (int) (width * mThumbnailRatio);
+                final int thumbnailHeight = (int) (height * mThumbnailRatio);
+                final YuvTransformer thumbnailTransformer = mHasThumbnail && thumbnailWidth > 0 && thumbnailHeight > 0
+                        ? getYuvTransformer("thumbnail", ImageFormat.NV21, width, height, thumbnailWidth, thumbnailHeight, 0, false)
+                        : null;
+
+                if (thumbnailTransformer != null || !renditions.isEmpty()) {
+                    // The thumbnail and renditions are downsampled from the scaled pixels and encoded while the fullsize image is.
+                    thumbnailTask = submitThumbnailTask(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (thumbnailTransformer != null) {
+                                byte[] thumbnailYuvData = transformFrame(thumbnailTransformer, yuvData, luma);
+                                int outputWidth = thumbnailTransformer.getOutputWidth();
+                                int outputHeight = thumbnailTransformer.getOutputHeight();
+                                sendImage("thumbnail", encodeImage(thumbnailYuvData, outputWidth, outputHeight, quality), outputWidth, outputHeight, quality, frameOrientation, frame);
+                            }
+                            renderRenditions(renditions, yuvData, width, height, quality, frameOrientation, frame);
+                        }
+                    });
+                }
+
+                long encodeStartTime = System.nanoTime();
+                TileTracker tileTracker = mTileTracker;
+                if (tileTracker != null && isDeltaOutput()) {
+                    sendDeltaImage(tileTracker, yuvData, width, height, quality, frameOrientation, frame);
+                } else {
+                    sendImage("fullsize", encodeImage(yuvData, width, height, quality), width, height, quality, frameOrientation, frame);
+                }
+                reportEncodeTime(System.nanoTime() - encodeStartTime);
+            } else if (isRawOutput()) {
+                rendered = false;
+                if (LOGGING)
+                    Log.w(TAG, "Raw output is not available for preview format " + getPreviewFormatToString(mPreviewFormat) + ".");
+            } else {
+                // Other preview formats go through a bitmap round trip, cropped to the region of interest when compressed.
+                long encodeStartTime = System.nanoTime();
+                boolean mirror = (mCameraFacing == Camera.CameraInfo.CAMERA_FACING_FRONT);
+                int[] crop = YuvTransformer.getCropRect(mRoi, mPreviewSize.width, mPreviewSize.height, displayOrientation, mirror);
+                int targetWidth = (int) Math.round(mCanvasWidth * crop[2] / (double) mPreviewSize.width);
+                int targetHeight = (int) Math.round(mCanvasHeight * crop[3] / (double) mPreviewSize.height);
+                Rect rect = new Rect(crop[0], crop[1], crop[0] + crop[2], crop[1] + crop[3]);
+                byte[] fullsizeData = getResizedAndRotatedImage(dataToJpeg(data, mPreviewSize.width, mPreviewSize.height, rect), targetWidth, targetHeight, displayOrientation, quality);
+                sendImage("fullsize", fullsizeData, 0, 0, quality, frameOrientation, frame);
+                reportEncodeTime(System.nanoTime() - encodeStartTime);
+
+                if (mHasThumbnail) {
+                    sendImage("thumbnail", getResizedImage(fullsizeData, mThumbnailRatio, quality), 0, 0, quality, frameOrientation, frame);
+                }
+            }
 
+            if (thumbnailTask != null) {
+                // Keeps the number of frames being processed bounded.
                 try {
-                    setPreviewParameters();
+                    thumbnailTask.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    if (LOGGING) Log.e(TAG, "Could not render thumbnail : " + e.getCause());
+                }
+            }
 
-                    mCamera.setPreviewTexture(surface);
-                    mCamera.setDisplayOrientation(mDisplayOrientation);
-                    mCamera.setErrorCallback(mCameraErrorCallback);
-                    mCamera.setPreviewCallback(mCameraPreviewCallback);
-
-                    mFileId = 0;
-
-                    mCamera.startPreview();
-                    mPreviewing = true;
-                    if (LOGGING) Log.i(TAG, "Camera [" + mCameraId + "] started.");
-                } catch (Exception e) {
-                    mPreviewing = false;
-                    if (LOGGING) Log.e(TAG, "Failed to init preview: " + e.getMessage());
-                    stopCamera();
+            if (rendered) {
+                // Includes the thumbnail and renditions, sent after the fullsize image.
+                mPipelineStats.recordTime(PipelineStats.STAGE_FRAME, System.nanoTime() - frameStartTime);
+            }
+        }
+    }
+
+    /**
+     * Returns the renditions due for this frame, given their fps divisors.
+     */
+    private List<Rendition> getFrameRenditions() {
+        List<Rendition> renditions = new ArrayList<Rendition>();
+        for (Rendition rendition : mRenditions) {
+            if (rendition.accept()) {
+                renditions.add(rendition);
+            }
+        }
+        return renditions;
+    }
+
+    private static boolean hasChroma(List<Rendition> renditions) {
+        for (Rendition rendition : renditions) {
+            if (rendition.hasChroma()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renders renditions from largest to smallest, each one downsampled from the smallest image
+     * already rendered for this frame that is at least its size : the fullsize frame or a larger
+     * rendition. Only one YUV conversion of the camera frame is done.
+     */
+    private void renderRenditions(List<Rendition> renditions, byte[] yuvData, final int width, final int height, int quality, FrameOrientation frameOrientation, PreviewFrame frame) {
+        if (renditions.isEmpty()) {
+            return;
+        }
+
+        List<Rendition> ordered = new ArrayList<Rendition>(renditions);
+        Collections.sort(ordered, new Comparator<Rendition>() {
+            @Override
+            public int compare(Rendition a, Rendition b) {
+                long difference = b.getArea(width, height) - a.getArea(width, height);
+                return difference > 0 ? 1 : (difference < 0 ? -1 : 0);
+            }
+        });
+
+        // Downscale pyramid : full field of view images with chroma, largest first.
+        List<PyramidLevel> levels = new ArrayList<PyramidLevel>();
+        levels.add(new PyramidLevel(yuvData, width, height));
+
+        for (Rendition rendition : ordered) {
+            int targetWidth = rendition.getWidth() > 0 ? rendition.getWidth() : width;
+            int targetHeight = rendition.getHeight() > 0 ? rendition.getHeight() : height;
+            PyramidLevel source = levels.get(0);
+            for (PyramidLevel level : levels) {
+                if (level.width >= targetWidth && level.height >= targetHeight) {
+                    source = level;
+                }
+            }
+
+            YuvTransformer transformer = getRenditionTransformer(rendition, source.width, source.height);
+            byte[] renditionYuvData = transformFrame(transformer, source.data, !rendition.hasChroma());
+            int outputWidth = transformer.getOutputWidth();
+            int outputHeight = transformer.getOutputHeight();
+
+            if (rendition.hasChroma() && !rendition.isCrop()) {
+                levels.add(new PyramidLevel(renditionYuvData, outputWidth, outputHeight));
+            }
+
+            int renditionQuality = rendition.getQuality() > 0 ? rendition.getQuality() : quality;
+            byte[] imageData = encodeImage(renditionYuvData, outputWidth, outputHeight, renditionQuality, rendition.getUse());
+            sendImage(rendition.getName(), imageData, outputWidth, outputHeight, renditionQuality, frameOrientation, frame, rendition.getUse(), null, null);
+        }
+    }
+
+    /**
+     * Scales, mirrors and rotates a frame (only its Y plane in luma mode).
+     */
+    private byte[] transformFrame(YuvTransformer transformer, byte[] data, boolean luma) {
+        long startTime = System.nanoTime();
+        int strips = getStripCount(transformer.getWidth(), transformer.getHeight(), mUse);
+        byte[] yuvData;
+        if (strips > 1) {
+            yuvData = getStripConverter().transform(transformer, data, luma, strips);
+        } else {
+            yuvData = luma ? transformer.transformLuma(data, null) : transformer.transform(data);
+        }
+        mPipelineStats.recordTime(PipelineStats.STAGE_TRANSFORM, System.nanoTime() - startTime);
+        mPipelineStats.recordAllocation(yuvData.length);
+        return yuvData;
+    }
+
+    /**
+     * Encodes a transformed NV21 frame (or its Y plane in luma mode) for the use option.
+     */
+    private byte[] encodeImage(byte[] yuvData, int width, int height, int quality) {
+        return encodeImage(yuvData, width, height, quality, mUse);
+    }
+
+    private byte[] encodeImage(byte[] yuvData, int width, int height, int quality, String use) {
+        if ("luma".equals(use)) {
+            // The frame keeps its chroma when a rendition needs it.
+            return yuvData.length > width * height ? Arrays.copyOf(yuvData, width * height) : yuvData;
+        }
+
+        long startTime = System.nanoTime();
+        byte[] imageData;
+        if ("rgba".equals(use)) {
+            int strips = getStripCount(width, height, use);
+            if (strips > 1) {
+                imageData = getStripConverter().toRgba(yuvData, width, height, strips);
+            } else {
+                imageData = YuvTransformer.toRgba(yuvData, width, height, null);
+            }
+        } else {
+            imageData = dataToJpeg(yuvData, ImageFormat.NV21, width, height, quality);
+        }
+        mPipelineStats.recordTime(PipelineStats.STAGE_ENCODE, System.nanoTime() - startTime);
+        mPipelineStats.increment(PipelineStats.COUNTER_ENCODED);
+        mPipelineStats.recordAllocation(imageData.length);
+        return imageData;
+    }
+
+    /**
+     * Sends a keyframe, or only the tiles that changed since the previous fullsize image.
+     */
+    private void sendDeltaImage(TileTracker tileTracker, byte[] yuvData, int width, int height, int quality, FrameOrientation frameOrientation, PreviewFrame frame) {
+        TileTracker.Delta delta = tileTracker.update(frame.id, yuvData, width, height, frame.timestamp);
+        if (delta == null) {
+            // A newer frame was already compared, this one would not apply to it.
+            return;
+        }
+
+        if (delta.keyframe) {
+            sendImage("fullsize", encodeImage(yuvData, width, height, quality), width, height, quality, frameOrientation, frame, mUse, delta, null);
+        } else if (!delta.tiles.isEmpty() || isPullMode()) {
+            // A requested frame is sent even unchanged, so that its request is answered.
+            long startTime = System.nanoTime();
+            List<byte[]> tileImages = new ArrayList<byte[]>(delta.tiles.size());
+            for (TileTracker.Tile tile : delta.tiles) {
+                byte[] tileImage = dataToJpeg(yuvData, ImageFormat.NV21, width, height, new Rect(tile.x, tile.y, tile.x + tile.width, tile.y + tile.height), quality);
+                mPipelineStats.recordAllocation(tileImage.length);
+                tileImages.add(tileImage);
+            }
+            mPipelineStats.recordTime(PipelineStats.STAGE_ENCODE, System.nanoTime() - startTime);
+            mPipelineStats.increment(PipelineStats.COUNTER_ENCODED);
+            sendImage("fullsize", null, width, height, quality, frameOrientation, frame, mUse, delta, tileImages);
+        }
+    }
+
+    private void resetTileTracker() {
+        TileTracker tileTracker = mTileTracker;
+        if (tileTracker != null) {
+            tileTracker.reset();
+        }
+    }
+
+    private int getJpegQuality() {
+        JpegQualityController jpegQualityController = mJpegQualityController;
+        return jpegQualityController != null ? jpegQualityController.getQuality() : mQuality;
+    }
+
+    /**
+     * Reports the time spent encoding and sending a fullsize JPEG image to the quality controller.
+     */
+    private void reportEncodeTime(long elapsed) {
+        JpegQualityController jpegQualityController = mJpegQualityController;
+        if (jpegQualityController != null && !isRawOutput()) {
+            jpegQualityController.report(elapsed);
+        }
+    }
+
+    private Future<?> submitThumbnailTask(Runnable task) {
+        ExecutorService thumbnailExecutor = mThumbnailExecutor;
+        if (thumbnailExecutor != null) {
+            try {
+                return thumbnailExecutor.submit(task);
+            } catch (RejectedExecutionException e) {
+                if (LOGGING) Log.w(TAG, "Thumbnail task rejected : " + e.getMessage());
+            }
+        }
+        // Renders the thumbnail on the calling thread.
+        task.run();
+        return null;
+    }
+
+    /**
+     * Sends one image of the current frame to the capture callback as soon as it is ready.
+     */
+    private void sendImage(String name, byte[] imageData, int width, int height, int quality, FrameOrientation frameOrientation, PreviewFrame frame) {
+        sendImage(name, imageData, width, height, quality, frameOrientation, frame, mUse, null, null);
+    }
+
+    /**
+     * Sends one image, or the changed tiles of a delta frame without image data.
+     */
+    private void sendImage(String name, byte[] imageData, int width, int height, int quality, FrameOrientation frameOrientation, PreviewFrame frame, String use, TileTracker.Delta delta, List<byte[]> tileImages) {
+        int size = imageData != null ? imageData.length : 0;
+        if (tileImages != null) {
+            for (byte[] tileImage : tileImages) {
+                size += tileImage.length;
+            }
+        }
+
+        if (!mPreviewing || size == 0) {
+            return;
+        }
+
+        if ("stream".equals(use)) {
+            // Streamed images never go through the bridge.
+            mFrameSequencer.submit(frame.id, new ImageResult(name, null, imageData, imageData.length, 0));
+            return;
+        }
+
+        // JSON output for image.
+        JSONObject image = new JSONObject();
+
+        // Binary parts sent along with the JSON output.
+        List<byte[]> binaries = new ArrayList<byte[]>();
+
+        if (tileImages != null) {
+            putTiles(name, image, quality, delta, tileImages, binaries);
+        } else if (use != null) {
+            if ("data".equals(use)) {
+                long base64StartTime = System.nanoTime();
+                String imageDataToB64 = "data:image/jpeg;base64," + Base64.encodeToString(imageData, Base64.DEFAULT);
+                mPipelineStats.recordTime(PipelineStats.STAGE_BASE64, System.nanoTime() - base64StartTime);
+                // UTF-16 characters.
+                mPipelineStats.recordAllocation(imageDataToB64.length() * 2L);
+                try {
+                    image.put("data", imageDataToB64);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".data into JSON result : " + e.getMessage());
+                }
+            }
+            if ("binary".equals(use)) {
+                binaries.add(imageData);
+                try {
+                    image.put("binary", binaries.size());
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".binary into JSON result : " + e.getMessage());
+                }
+            }
+            String imagePath = "file".equals(use) ? saveImage(imageData, name) : null;
+            if (imagePath != null) {
+                try {
+                    image.put("file", imagePath);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".path into JSON result : " + e.getMessage());
+                }
+            }
+            if (isRawOutput(use)) {
+                binaries.add(imageData);
+                try {
+                    image.put(use, binaries.size());
+                    image.put("width", width);
+                    image.put("height", height);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + "." + use + " into JSON result : " + e.getMessage());
                 }
             } else {
+                try {
+                    image.put("quality", quality);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".quality into JSON result : " + e.getMessage());
+                }
+                if ("fullsize".equals(name)) {
+                    addPluginResultDataOutput(imageData, image);
+                }
+            }
+        }
+
+        if (image.length() > 0) {
+            // JSON output for images.
+            JSONObject images = new JSONObject();
+
+            try {
+                images.put(name, image);
+
+                try {
+                    image.put("rotation", frameOrientation.displayOrientation);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".rotation into JSON result : " + e.getMessage());
+                }
+
+                try {
+                    image.put("orientation", frameOrientation.orientation);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".orientation into JSON result : " + e.getMessage());
+                }
+
+                try {
+                    image.put("timestamp", (new java.util.Date()).getTime());
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".timestamp into JSON result : " + e.getMessage());
+                }
+
+                try {
+                    image.put("frameId", frame.id);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".frameId into JSON result : " + e.getMessage());
+                }
+
+                try {
+                    // Monotonic clock, only meaningful when sent back in a frame report.
+                    image.put("captureTime", frame.timestamp / 1000000.0);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.images." + name + ".captureTime into JSON result : " + e.getMessage());
+                }
+
+                if (frame.motion >= 0) {
+                    try {
+                        image.put("motion", frame.motion);
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.output.images." + name + ".motion into JSON result : " + e.getMessage());
+                    }
+                }
+
+                if (delta != null) {
+                    try {
+                        image.put("keyframe", delta.keyframe);
+                        image.put("width", width);
+                        image.put("height", height);
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.output.images." + name + ".keyframe into JSON result : " + e.getMessage());
+                    }
+                }
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.output.images." + name + " into JSON result : " + e.getMessage());
+            }
+
+            // JSON output
+            JSONObject output = new JSONObject();
+
+            try {
+                output.put("images", images);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.output.images into JSON result : " + e.getMessage());
+            }
+
+            FrameScheduler<PreviewFrame> frameScheduler = mFrameScheduler;
+            if (frameScheduler != null && "fullsize".equals(name)) {
+                JSONObject frames = new JSONObject();
+
+                try {
+                    output.put("frames", frames);
+
+                    try {
+                        frames.put("processed", frameScheduler.getProcessedCount());
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.output.frames.processed into JSON result : " + e.getMessage());
+                    }
+
+                    try {
+                        frames.put("dropped", frameScheduler.getDroppedCount());
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.output.frames.dropped into JSON result : " + e.getMessage());
+                    }
+
+                    try {
+                        frames.put("failed", frameScheduler.getFailedCount());
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.output.frames.failed into JSON result : " + e.getMessage());
+                    }
+
+                    FrameRateGovernor frameRateGovernor = mFrameRateGovernor;
+                    if (frameRateGovernor != null) {
+                        try {
+                            frames.put("throttled", frameRateGovernor.getThrottledCount());
+                        } catch (JSONException e) {
+                            if (LOGGING)
+                                Log.e(TAG, "Cannot put data.output.frames.throttled into JSON result : " + e.getMessage());
+                        }
+                    }
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.output.frames into JSON result : " + e.getMessage());
+                }
+            }
+
+            if (mPreviewing) {
+                long bridgeStartTime = System.nanoTime();
+                PluginResult result;
+                if (binaries.isEmpty()) {
+                    result = new PluginResult(PluginResult.Status.OK, getPluginResultFrameMessage(output));
+                } else {
+                    // JSON output first, then one ArrayBuffer per binary image.
+                    List<PluginResult> multipart = new ArrayList<PluginResult>();
+                    multipart.add(new PluginResult(PluginResult.Status.OK, getPluginResultFrameMessage(output)));
+                    for (byte[] binary : binaries) {
+                        multipart.add(new PluginResult(PluginResult.Status.OK, binary));
+                    }
+                    result = new PluginResult(PluginResult.Status.OK, multipart);
+                }
+                result.setKeepCallback(true);
+
+                mFrameSequencer.submit(frame.id, new ImageResult(name, result, null, size, System.nanoTime() - bridgeStartTime));
+            }
+        }
+    }
+
+    /**
+     * Puts the changed tiles of a delta frame, as base64 data or binary parts.
+     */
+    private void putTiles(String name, JSONObject image, int quality, TileTracker.Delta delta, List<byte[]> tileImages, List<byte[]> binaries) {
+        JSONArray tiles = new JSONArray();
+
+        for (int i = 0; i < tileImages.size(); i++) {
+            TileTracker.Tile tile = delta.tiles.get(i);
+            byte[] tileImage = tileImages.get(i);
+            JSONObject jsonTile = new JSONObject();
+
+            try {
+                jsonTile.put("x", tile.x);
+                jsonTile.put("y", tile.y);
+                jsonTile.put("width", tile.width);
+                jsonTile.put("height", tile.height);
+                if ("binary".equals(mUse)) {
+                    binaries.add(tileImage);
+                    jsonTile.put("binary", binaries.size());
+                } else {
+                    long base64StartTime = System.nanoTime();
+                    String tileImageToB64 = "data:image/jpeg;base64," + Base64.encodeToString(tileImage, Base64.DEFAULT);
+                    mPipelineStats.recordTime(PipelineStats.STAGE_BASE64, System.nanoTime() - base64StartTime);
+                    mPipelineStats.recordAllocation(tileImageToB64.length() * 2L);
+                    jsonTile.put("data", tileImageToB64);
+                }
+                tiles.put(jsonTile);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.output.images." + name + ".tiles[" + i + "] into JSON result : " + e.getMessage());
+            }
+        }
+
+        try {
+            image.put("tiles", tiles);
+            image.put("quality", quality);
+        } catch (JSONException e) {
+            if (LOGGING)
+                Log.e(TAG, "Cannot put data.output.images." + name + ".tiles into JSON result : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends an image to the capture callback, in capture order.
+     */
+    private void deliverImage(ImageResult image) {
+        if (!mPreviewing) {
+            return;
+        }
+
+        FrameBufferPool frameBufferPool = mFrameBufferPool;
+        if (frameBufferPool != null && frameBufferPool.getHighWaterMark() != mSessionHighWaterMark) {
+            sendSessionMessage();
+        }
+
+        if (image.result != null) {
+            long bridgeStartTime = System.nanoTime();
+            mStartCaptureCallbackContext.sendPluginResult(image.result);
+            mPipelineStats.recordTime(PipelineStats.STAGE_BRIDGE, image.resultTime + System.nanoTime() - bridgeStartTime);
+        } else {
+            MjpegServer mjpegServer = mMjpegServer;
+            if (mjpegServer == null) {
+                return;
+            }
+            mjpegServer.publish(image.name, image.data);
+        }
+        mPipelineStats.recordDelivery(image.size, "fullsize".equals(image.name));
+
+        if (mTimeToFirstFrame.get() < 0 && mTimeToFirstFrame.compareAndSet(-1, System.nanoTime() - mCaptureStartTime)) {
+            if (LOGGING)
+                Log.i(TAG, "Time to first frame : " + (mTimeToFirstFrame.get() / 1000000) + " ms.");
+            sendSessionMessage();
+        }
+    }
+
+    private void recycleFrameBuffer(byte[] data, Camera camera) {
+        FrameBufferPool frameBufferPool = mFrameBufferPool;
+        if (frameBufferPool != null && frameBufferPool.release(data) && camera == mCamera && mPreviewing) {
+            try {
+                camera.addCallbackBuffer(data);
+            } catch (RuntimeException e) {
+                if (LOGGING) Log.w(TAG, "Could not recycle frame buffer : " + e.getMessage());
+            }
+        }
+    }
+
+    private void addPreviewCallbackBuffers() {
+        int bufferSize;
+        if (YuvTransformer.isSupportedFormat(mPreviewFormat)) {
+            bufferSize = YuvTransformer.getBufferSize(mPreviewFormat, mPreviewSize.width, mPreviewSize.height);
+        } else {
+            bufferSize = mPreviewSize.width * mPreviewSize.height * ImageFormat.getBitsPerPixel(mPreviewFormat) / 8;
+        }
+
+        FrameBufferPool frameBufferPool = mFrameBufferPool;
+        if (frameBufferPool == null || frameBufferPool.getCapacity() != mMaxFramesInFlight + FRAME_BUFFER_POOL_EXTRA_SIZE) {
+            frameBufferPool = new FrameBufferPool(mMaxFramesInFlight + FRAME_BUFFER_POOL_EXTRA_SIZE);
+            mFrameBufferPool = frameBufferPool;
+        }
+
+        for (byte[] buffer : frameBufferPool.allocate(bufferSize)) {
+            mCamera.addCallbackBuffer(buffer);
+        }
+
+        if (LOGGING)
+            Log.i(TAG, "Preview callback buffers added : " + frameBufferPool.getCapacity() + " x " + bufferSize + " bytes.");
+    }
+
+    /**
+     * Opens the camera asynchronously, then starts the preview on the given surface.
+     */
+    private void openCamera(final SurfaceTexture surface) {
+        int[] cameraIds = getCameraIds(mCameraFacing);
+
+        if (cameraIds.length == 0) {
+            mPreviewing = false;
+            if (LOGGING) Log.w(TAG, "Could not get camera instance.");
+            return;
+        }
+
+        Camera prewarmedCamera = takePrewarmedCamera(cameraIds);
+        if (prewarmedCamera != null) {
+            if (LOGGING) Log.i(TAG, "Using prewarmed camera [" + mPrewarmedCameraId + "].");
+            startPreview(surface, prewarmedCamera, mPrewarmedCameraId);
+            mPrewarmedCameraId = -1;
+            return;
+        }
+
+        // A pending prewarm for the same camera is taken over by this request.
+        mCameraPrewarmCallback = null;
+
+        mCameraOpenCallback = new CameraOpener.Callback() {
+            @Override
+            public void onCameraOpened(Camera camera, int cameraId, int attempts) {
+                if (mCameraOpenCallback != this || !mPreviewing) {
+                    camera.release();
+                    return;
+                }
+                mCameraOpenCallback = null;
+                mCameraOpenAttempts = attempts;
+                if (LOGGING) Log.i(TAG, "Camera [" + cameraId + "] opened.");
+                startPreview(surface, camera, cameraId);
+            }
+
+            @Override
+            public void onCameraOpenFailed(String message, int attempts) {
+                if (mCameraOpenCallback != this) {
+                    return;
+                }
+                mCameraOpenCallback = null;
+                mCameraOpenAttempts = attempts;
                 mPreviewing = false;
-                if (LOGGING) Log.w(TAG, "Could not get camera instance.");
+                if (LOGGING)
+                    Log.e(TAG, "Unable to open camera after " + attempts + " attempt(s) : " + message);
+
+                if (mCachedCapabilities) {
+                    // The cached cameras may be stale, they are queried again on next start.
+                    getCameraCapabilitiesCache().clear();
+                    saveCameraCapabilitiesCache();
+                }
+
+                CallbackContext startCaptureCallbackContext = mStartCaptureCallbackContext;
+                if (startCaptureCallbackContext != null) {
+                    PluginResult result = new PluginResult(PluginResult.Status.ERROR, getPluginResultMessage("Unable to open camera : " + message));
+                    result.setKeepCallback(true);
+                    startCaptureCallbackContext.sendPluginResult(result);
+                }
+            }
+        };
+
+        getCameraOpener().open(cameraIds, mCameraOpenCallback);
+    }
+
+    private void startPreview(SurfaceTexture surface, Camera camera, int cameraId) {
+        mCamera = camera;
+        mCameraId = cameraId;
+        mTimeToOpen = System.nanoTime() - mCaptureStartTime;
+
+        mTextureView.setVisibility(View.INVISIBLE);
+        mTextureView.setAlpha(0);
+
+        try {
+            setPreviewParameters();
+
+            mCamera.setPreviewTexture(surface);
+            mCamera.setDisplayOrientation(mDisplayOrientation);
+            mCamera.setErrorCallback(mCameraErrorCallback);
+            addPreviewCallbackBuffers();
+            mCamera.setPreviewCallbackWithBuffer(mCameraPreviewCallback);
+
+            mCamera.startPreview();
+            mPreviewing = true;
+            if (LOGGING) Log.i(TAG, "Camera [" + mCameraId + "] started.");
+
+            sendSessionMessage();
+        } catch (Exception e) {
+            mPreviewing = false;
+            if (LOGGING) Log.e(TAG, "Failed to init preview: " + e.getMessage());
+            stopCamera();
+        }
+    }
+
+    private synchronized CameraOpener getCameraOpener() {
+        if (mCameraOpener == null) {
+            mCameraOpener = new CameraOpener(getMainHandler(), CAMERA_OPEN_TIMEOUT, CAMERA_OPEN_ATTEMPTS, CAMERA_OPEN_RETRY_DELAY);
+        }
+        return mCameraOpener;
+    }
+
+    /**
+     * Number of strips a frame of the given size is converted in for the given use, 1 to convert it on the calling thread.
+     */
+    private int getStripCount(int width, int height, String use) {
+        // Fork-join pools are only available from Lollipop.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return 1;
+        } else if (mStrips > 0) {
+            return mStrips;
+        } else if (!isRawOutput(use)) {
+            // JPEG encoding is not split and takes most of the frame time, strips would barely lower the latency.
+            return 1;
+        } else if (width * height >= STRIP_MIN_PIXELS) {
+            return Math.min(MAX_DEFAULT_STRIPS, Runtime.getRuntime().availableProcessors());
+        } else {
+            return 1;
+        }
+    }
+
+    private synchronized StripConverter getStripConverter() {
+        if (mStripConverter == null) {
+            mStripConverter = new StripConverter(Runtime.getRuntime().availableProcessors());
+        }
+        return mStripConverter;
+    }
+
+    private synchronized Handler getMainHandler() {
+        if (mMainHandler == null) {
+            mMainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mMainHandler;
+    }
+
+    /**
+     * Opens a camera ahead of the capture, so that starting the capture does not wait for it.
+     */
+    private synchronized void prewarm(JSONArray args, CallbackContext prewarmCallbackContext) {
+        int cameraFacing = mCameraFacing;
+
+        JSONObject options = args.optJSONObject(0);
+        if (options != null && options.has(K_LENS_ORIENTATION_KEY)) {
+            cameraFacing = getCameraFacing(options.optString(K_LENS_ORIENTATION_KEY, null));
+        }
+
+        getCameraOpener().prepare();
+
+        if (mCamera != null || mCameraOpenCallback != null || mCameraPrewarmCallback != null || mPrewarmedCamera != null) {
+            if (LOGGING) Log.i(TAG, "Camera already opened or opening, nothing to prewarm.");
+            prewarmCallbackContext.success(getPluginResultMessage("OK"));
+            return;
+        }
+
+        int[] cameraIds = getCameraIds(cameraFacing);
+
+        if (cameraIds.length == 0) {
+            if (LOGGING) Log.w(TAG, "Could not prewarm camera. No camera available !");
+            prewarmCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION, getPluginResultMessage("Could not prewarm camera. No camera available !")));
+            return;
+        }
+
+        mCameraPrewarmCallback = new CameraOpener.Callback() {
+            @Override
+            public void onCameraOpened(Camera camera, int cameraId, int attempts) {
+                if (mCameraPrewarmCallback != this) {
+                    camera.release();
+                    return;
+                }
+                mCameraPrewarmCallback = null;
+                mPrewarmedCamera = camera;
+                mPrewarmedCameraId = cameraId;
+                getMainHandler().postDelayed(mReleasePrewarmedCamera, CAMERA_PREWARM_TIMEOUT);
+                if (LOGGING) Log.i(TAG, "Camera [" + cameraId + "] prewarmed.");
+            }
+
+            @Override
+            public void onCameraOpenFailed(String message, int attempts) {
+                if (mCameraPrewarmCallback == this) {
+                    mCameraPrewarmCallback = null;
+                }
+                if (LOGGING) Log.w(TAG, "Could not prewarm camera : " + message);
+            }
+        };
+
+        getCameraOpener().open(cameraIds, mCameraPrewarmCallback);
+        prewarmCallbackContext.success(getPluginResultMessage("OK"));
+    }
+
+    /**
+     * Returns the prewarmed camera if it is one of the given cameras, releases it otherwise.
+     */
+    private Camera takePrewarmedCamera(int[] cameraIds) {
+        Camera camera = mPrewarmedCamera;
+        if (camera != null) {
+            mPrewarmedCamera = null;
+            getMainHandler().removeCallbacks(mReleasePrewarmedCamera);
+            for (int cameraId : cameraIds) {
+                if (cameraId == mPrewarmedCameraId) {
+                    return camera;
+                }
+            }
+            camera.release();
+            mPrewarmedCameraId = -1;
+        }
+        return null;
+    }
+
+    private final Runnable mReleasePrewarmedCamera = new Runnable() {
+        @Override
+        public void run() {
+            releasePrewarmedCamera();
+        }
+    };
+
+    private void releasePrewarmedCamera() {
+        if (mCameraPrewarmCallback != null) {
+            mCameraPrewarmCallback = null;
+            getCameraOpener().cancel();
+        }
+        if (mPrewarmedCamera != null) {
+            getMainHandler().removeCallbacks(mReleasePrewarmedCamera);
+            try {
+                mPrewarmedCamera.release();
+            } catch (RuntimeException e) {
+                if (LOGGING) Log.w(TAG, "Could not release prewarmed camera : " + e.getMessage());
+            }
+            mPrewarmedCamera = null;
+            mPrewarmedCameraId = -1;
+            if (LOGGING) Log.i(TAG, "Prewarmed camera released.");
+        }
+    }
+
+    private void initFrameScheduler() {
+        FrameScheduler<PreviewFrame> frameScheduler = mFrameScheduler;
+        if (frameScheduler == null || frameScheduler.getMaxFramesInFlight() != mMaxFramesInFlight) {
+            if (frameScheduler != null) {
+                frameScheduler.shutdown();
+            }
+            mFrameScheduler = new FrameScheduler<PreviewFrame>(mMaxFramesInFlight, mFrameHandler);
+            if (mThumbnailExecutor != null) {
+                mThumbnailExecutor.shutdown();
             }
+            // One thumbnail per frame in flight.
+            mThumbnailExecutor = Executors.newFixedThreadPool(mMaxFramesInFlight, new ThreadFactory() {
+                private final AtomicInteger mThreadCount = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CanvasCameraThumbnail-" + mThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            if (LOGGING)
+                Log.i(TAG, "Frame scheduler initialized with " + mMaxFramesInFlight + " frame(s) in flight.");
+        }
+    }
+
+    private final TextureView.SurfaceTextureListener mSurfaceTextureListener = new TextureView.SurfaceTextureListener() {
+        public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+            openCamera(surface);
         }
 
         public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
@@ -353,6 +1435,12 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         mDir = mActivity.getExternalCacheDir();
         super.initialize(cordova, webView);
         deleteCachedImageFiles();
+        // Camera opening thread is ready before the first capture.
+        getCameraOpener().prepare();
+        DisplayManager displayManager = (DisplayManager) mActivity.getSystemService(Context.DISPLAY_SERVICE);
+        if (displayManager != null) {
+            displayManager.registerDisplayListener(mDisplayListener, new Handler(Looper.getMainLooper()));
+        }
     }
 
     @Override
@@ -364,9 +1452,10 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     @Override
     public void onStop() {
         super.onStop();
-        if (mCamera != null) {
+        if (mCamera != null || mCameraOpenCallback != null) {
             stopCamera();
         }
+        releasePrewarmedCamera();
         if (mTextureView != null) {
             removePreviewSurface();
         }
@@ -376,7 +1465,32 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     @Override
     public void onDestroy() {
         super.onDestroy();
-        cordova.getThreadPool().shutdownNow();
+        if (mActivity != null) {
+            DisplayManager displayManager = (DisplayManager) mActivity.getSystemService(Context.DISPLAY_SERVICE);
+            if (displayManager != null) {
+                displayManager.unregisterDisplayListener(mDisplayListener);
+            }
+        }
+        if (mFrameScheduler != null) {
+            mFrameScheduler.shutdown();
+            mFrameScheduler = null;
+        }
+        if (mThumbnailExecutor != null) {
+            mThumbnailExecutor.shutdown();
+            mThumbnailExecutor = null;
+        }
+        synchronized (this) {
+            if (mStripConverter != null) {
+                mStripConverter.shutdown();
+                mStripConverter = null;
+            }
+        }
+        releasePrewarmedCamera();
+        if (mCameraOpener != null) {
+            mCameraOpener.quit();
+        }
+        stopStreamServer();
+        closeImageFiles();
         deleteCachedImageFiles();
     }
 
@@ -399,18 +1513,82 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     private void setCameraOrientation(int orientation) {
         mOrientation = orientation;
         if (LOGGING) Log.i(TAG, "Orientation changed.");
-        if (startCamera()) {
-            if (LOGGING) Log.i(TAG, "Camera successfully restarted.");
-        } else {
-            if (LOGGING) Log.w(TAG, "Could not restart camera.");
+        updateOrientation();
+    }
+
+    /**
+     * Recomputes the frame rotation after a configuration or display change.
+     * The camera keeps running, frames pick up the new orientation from the next one on.
+     */
+    private void updateOrientation() {
+        if (mActivity != null) {
+            mDisplayRotation = getDisplayRotation();
+            mDisplayOrientation = getDisplayOrientation();
+            mFrameOrientation = new FrameOrientation(mDisplayOrientation, getCurrentOrientationToString());
+            if (mCamera != null && mPreviewing) {
+                try {
+                    mCamera.setDisplayOrientation(mDisplayOrientation);
+                } catch (RuntimeException e) {
+                    if (LOGGING)
+                        Log.w(TAG, "Could not set display orientation : " + e.getMessage());
+                }
+            }
+            if (LOGGING)
+                Log.i(TAG, "Frame rotation is set to : " + mDisplayOrientation + ".");
         }
     }
 
+    // Rotations by 180 degrees do not change the configuration orientation.
+    private final DisplayManager.DisplayListener mDisplayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (mPreviewing && mTextureView != null && mActivity != null && getDisplayRotation() != mDisplayRotation) {
+                updateOrientation();
+            }
+        }
+    };
+
     @Override
     public boolean execute(String action, final JSONArray args, final CallbackContext callbackContext) throws JSONException {
         mArgs = args;
         mCurrentCallbackContext = callbackContext;
 
+        // Stats never touch the camera, they need no permission.
+        if ("stats".equals(action)) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, getPluginResultStatsMessage("OK")));
+            return true;
+        } else if ("resetStats".equals(action)) {
+            mPipelineStats.reset();
+            if (LOGGING) Log.i(TAG, "Stats reset.");
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, getPluginResultStatsMessage("Stats reset.")));
+            return true;
+        } else if ("frameReport".equals(action)) {
+            frameReport(args, callbackContext);
+            return true;
+        } else if ("requestFrame".equals(action)) {
+            // Served from a preview frame the capture already has the permission for.
+            requestFrame(callbackContext);
+            return true;
+        } else if ("roi".equals(action)) {
+            // Only changes how the next frames are cropped.
+            roi(args, callbackContext);
+            return true;
+        } else if ("keyframe".equals(action)) {
+            // The WebView lost a tile, the next delta frame must be a keyframe.
+            resetTileTracker();
+            if (LOGGING) Log.i(TAG, "Keyframe requested.");
+            callbackContext.success(getPluginResultMessage("Keyframe requested."));
+            return true;
+        }
+
         if (PermissionHelper.hasPermission(this, Manifest.permission.CAMERA) &&
                 PermissionHelper.hasPermission(this, Manifest.permission.READ_EXTERNAL_STORAGE) &&
                 PermissionHelper.hasPermission(this, Manifest.permission.WRITE_EXTERNAL_STORAGE)) {
@@ -446,6 +1624,22 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                     }
                 });
                 return true;
+            } else if ("configure".equals(action)) {
+                if (LOGGING) Log.i(TAG, "Starting async configure thread...");
+                mActivity.runOnUiThread(new Runnable() {
+                    public void run() {
+                        configure(mArgs, mCurrentCallbackContext);
+                    }
+                });
+                return true;
+            } else if ("prewarm".equals(action)) {
+                if (LOGGING) Log.i(TAG, "Starting async prewarm thread...");
+                mActivity.runOnUiThread(new Runnable() {
+                    public void run() {
+                        prewarm(mArgs, mCurrentCallbackContext);
+                    }
+                });
+                return true;
             }
         } else {
             if ("startCapture".equals(action)) {
@@ -464,12 +1658,67 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                 deferPluginResultCallback(mCurrentCallbackContext);
                 PermissionHelper.requestPermission(this, SEC_CAMERA_POSITION, Manifest.permission.CAMERA);
                 return true;
+            } else if ("configure".equals(action)) {
+                deferPluginResultCallback(mCurrentCallbackContext);
+                PermissionHelper.requestPermission(this, SEC_CONFIGURE, Manifest.permission.CAMERA);
+                return true;
+            } else if ("prewarm".equals(action)) {
+                // Prewarming is optional, it never prompts for permissions.
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ILLEGAL_ACCESS_EXCEPTION, getPluginResultMessage("Could not prewarm camera. Permission not granted !")));
+                return true;
             }
         }
 
         return false;
     }
 
+    /**
+     * Records the frames drawn and skipped by the WebView since its last report.
+     * <p>
+     * Drawn frames are reported with their capture time and the time elapsed since they were
+     * painted, so that the capture to paint latency is computed on the native clock.
+     */
+    private void frameReport(JSONArray args, CallbackContext frameReportCallbackContext) {
+        long now = System.nanoTime();
+
+        try {
+            JSONObject report = args.getJSONObject(0);
+
+            JSONArray drawn = report.optJSONArray("drawn");
+            if (drawn != null) {
+                for (int i = 0; i < drawn.length(); i++) {
+                    JSONObject frame = drawn.getJSONObject(i);
+                    long captureTime = Math.round(frame.getDouble("captureTime") * 1000000.0);
+                    long age = Math.round(frame.optDouble("age", 0) * 1000000.0);
+                    long latency = now - age - captureTime;
+                    if (latency >= 0) {
+                        mPipelineStats.recordDrawn(latency);
+                    }
+                }
+            }
+
+            JSONObject skipped = report.optJSONObject("skipped");
+            if (skipped != null) {
+                recordSkippedFrames(skipped, "busy", PipelineStats.SKIPPED_BUSY);
+                recordSkippedFrames(skipped, "replaced", PipelineStats.SKIPPED_REPLACED);
+                recordSkippedFrames(skipped, "failed", PipelineStats.SKIPPED_FAILED);
+            }
+
+            frameReportCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+        } catch (JSONException e) {
+            if (LOGGING) Log.e(TAG, "Frame report parsing error : " + e.getMessage());
+            frameReportCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, getPluginResultMessage(e.getMessage())));
+        }
+    }
+
+    private void recordSkippedFrames(JSONObject skipped, String reason, int counter) {
+        JSONArray frameIds = skipped.optJSONArray(reason);
+        if (frameIds != null && frameIds.length() > 0) {
+            if (LOGGING) Log.v(TAG, frameIds.length() + " frame(s) skipped by the WebView (" + reason + ").");
+            mPipelineStats.recordSkipped(counter, frameIds.length());
+        }
+    }
+
     private void deferPluginResultCallback(final CallbackContext callbackContext) {
         PluginResult pluginResult = new PluginResult(PluginResult.Status.NO_RESULT);
         pluginResult.setKeepCallback(true);
@@ -520,6 +1769,14 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                     }
                 });
                 break;
+            case SEC_CONFIGURE:
+                if (LOGGING) Log.i(TAG, "Starting async configure thread...");
+                mActivity.runOnUiThread(new Runnable() {
+                    public void run() {
+                        configure(mArgs, mCurrentCallbackContext);
+                    }
+                });
+                break;
             default:
                 return;
         }
@@ -552,13 +1809,56 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
             return;
         }
 
+        initFrameScheduler();
+        mFrameRateGovernor = new FrameRateGovernor(mRequestedFps);
+        mMotionDetector = createMotionDetector();
+        mTileTracker = mDelta ? new TileTracker(mKeyframeInterval) : null;
+        mJpegQualityController = new JpegQualityController(mQuality, mAdaptiveQuality, mRequestedFps);
+
+        stopStreamServer();
+        if (isStreamOutput()) {
+            try {
+                startStreamServer();
+            } catch (IOException e) {
+                if (LOGGING) Log.e(TAG, "Could not start stream server : " + e.getMessage());
+                mStartCaptureCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.IO_EXCEPTION, getPluginResultMessage("Could not start stream server : " + e.getMessage())));
+                return;
+            }
+        }
+
         startCapture(mStartCaptureCallbackContext);
     }
 
+    private MotionDetector createMotionDetector() {
+        return mMotionThreshold > 0 ? new MotionDetector(mMotionThreshold, mKeepAliveInterval) : null;
+    }
+
+    /**
+     * Starts a loopback MJPEG server with a new token for this capture session.
+     */
+    private void startStreamServer() throws IOException {
+        MjpegServer mjpegServer = new MjpegServer(MjpegServer.newToken(), "fullsize", "thumbnail");
+        int port = mjpegServer.start();
+        mMjpegServer = mjpegServer;
+        if (LOGGING) Log.i(TAG, "Stream server listening on 127.0.0.1:" + port + ".");
+    }
+
+    private void stopStreamServer() {
+        MjpegServer mjpegServer = mMjpegServer;
+        if (mjpegServer != null) {
+            mMjpegServer = null;
+            mjpegServer.stop();
+            if (LOGGING) Log.i(TAG, "Stream server stopped.");
+        }
+    }
+
     private synchronized void stopCapture(CallbackContext stopCaptureCallbackContext) {
         try {
             stopCamera();
             removePreviewSurface();
+            closeImageFiles();
+            stopStreamServer();
+            cancelFrameRequests("Could not request frame. Capture stopped !");
             if (LOGGING) Log.i(TAG, "Capture stopped.");
             stopCaptureCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, getPluginResultMessage("Capture stopped.")));
         } catch (Exception e) {
@@ -581,10 +1881,16 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
 
             mFlashMode = getFlashMode(isFlashModeOn);
 
-            if (startCamera()) {
+            long reconfigurationStartTime = System.nanoTime();
+            boolean restart = !updatePreviewParameters();
+
+            if (!restart || startCamera()) {
                 if (mStartCaptureCallbackContext != null) {
                     if (LOGGING) Log.i(TAG, "Flash mode applied !");
-                    flashModeCallbackContext.success(getPluginResultMessage("OK"));
+                    if (!restart) {
+                        sendSessionMessage();
+                    }
+                    flashModeCallbackContext.success(getPluginResultReconfigurationMessage(reconfigurationStartTime, restart));
                 } else {
                     if (LOGGING)
                         Log.w(TAG, "Could not set flash mode. No capture callback available !");
@@ -612,12 +1918,16 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                 return;
             }
 
-            mCameraFacing = getCameraFacing(cameraPosition);
+            long reconfigurationStartTime = System.nanoTime();
+            int cameraFacing = getCameraFacing(cameraPosition);
+            // Only another camera needs a restart.
+            boolean restart = cameraFacing != mCameraFacing;
+            mCameraFacing = cameraFacing;
 
-            if (startCamera()) {
+            if (!restart || startCamera()) {
                 if (mStartCaptureCallbackContext != null) {
                     if (LOGGING) Log.i(TAG, "Camera switched !");
-                    cameraPositionCallbackContext.success(getPluginResultMessage("OK"));
+                    cameraPositionCallbackContext.success(getPluginResultReconfigurationMessage(reconfigurationStartTime, restart));
                 } else {
                     if (LOGGING)
                         Log.w(TAG, "Could not switch camera. No capture callback available !");
@@ -633,8 +1943,71 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         }
     }
 
+    private synchronized void configure(JSONArray args, CallbackContext configureCallbackContext) {
+        if (mCamera != null) {
+            long reconfigurationStartTime = System.nanoTime();
+            int cameraFacing = mCameraFacing;
+            double fps = mRequestedFps;
+            int quality = mQuality;
+            boolean adaptiveQuality = mAdaptiveQuality;
+            boolean pullMode = isPullMode();
+            double motionThreshold = mMotionThreshold;
+            long keepAliveInterval = mKeepAliveInterval;
+
+            try {
+                parseConfigurationOptions(args.getJSONObject(0));
+            } catch (Exception e) {
+                if (LOGGING) Log.e(TAG, "Failed to configure camera : " + e.getMessage());
+                configureCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, getPluginResultMessage(e.getMessage())));
+                return;
+            }
+
+            if (fps != mRequestedFps) {
+                mFrameRateGovernor = new FrameRateGovernor(mRequestedFps);
+            }
+
+            if (motionThreshold != mMotionThreshold || keepAliveInterval != mKeepAliveInterval) {
+                mMotionDetector = createMotionDetector();
+            }
+
+            if (fps != mRequestedFps || quality != mQuality || adaptiveQuality != mAdaptiveQuality) {
+                mJpegQualityController = new JpegQualityController(mQuality, mAdaptiveQuality, mRequestedFps);
+            }
+
+            if (pullMode && !isPullMode()) {
+                // Frames are pushed again, nothing is kept for requests.
+                releaseLatestFrame();
+                cancelFrameRequests("Could not request frame. Capture switched to push mode !");
+            }
+
+            // Only another camera or another preview size needs a restart.
+            boolean restart = cameraFacing != mCameraFacing || !updatePreviewParameters();
+
+            if (!restart || startCamera()) {
+                if (mStartCaptureCallbackContext != null) {
+                    if (LOGGING) Log.i(TAG, "Camera configured !");
+                    if (!restart) {
+                        sendSessionMessage();
+                    }
+                    configureCallbackContext.success(getPluginResultReconfigurationMessage(reconfigurationStartTime, restart));
+                } else {
+                    if (LOGGING)
+                        Log.w(TAG, "Could not configure camera. No capture callback available !");
+                    configureCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION, getPluginResultMessage("Could not configure camera. No capture callback available !")));
+                }
+            } else {
+                if (LOGGING) Log.w(TAG, "Could not configure camera. Could not start camera !");
+                configureCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION, getPluginResultMessage("Could not configure camera. Could not start camera !")));
+            }
+        } else {
+            if (LOGGING) Log.w(TAG, "Could not configure camera. No camera available !");
+            configureCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION, getPluginResultMessage("Could not configure camera. No camera available !")));
+        }
+    }
+
     public void setDefaults() {
         mFps = 30;
+        mRequestedFps = 30;
         mWidth = 352;
         mHeight = 288;
         mCanvasWidth = 352;
@@ -643,6 +2016,18 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         mCaptureHeight = 288;
         mHasThumbnail = false;
         mThumbnailRatio = 1 / 6;
+        mMaxFramesInFlight = getDefaultFramesInFlight();
+        mFocusMode = null;
+        mQuality = JpegQualityController.MAX_QUALITY;
+        mAdaptiveQuality = false;
+        mStrips = 0;
+        mMode = "push";
+        mMotionThreshold = 0;
+        mKeepAliveInterval = 1000;
+        mDelta = false;
+        mKeyframeInterval = 2000;
+        mRoi = null;
+        mRenditions = new ArrayList<Rendition>();
         mCameraFacing = Camera.CameraInfo.CAMERA_FACING_BACK;
         setDefaultOptions();
     }
@@ -677,9 +2062,44 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         }
     }
 
+    /**
+     * Applies flash mode, focus mode and fps range to the running camera without restarting it.
+     * Returns false when the camera has to be restarted instead, because the preview size changed
+     * or the camera rejected the parameters.
+     */
+    private boolean updatePreviewParameters() {
+        if (mCamera != null && mPreviewing && mPreviewSize != null) {
+            try {
+                Camera.Parameters parameters = mCamera.getParameters();
+                CameraCapabilities capabilities = getCameraCapabilities(parameters);
+                int[] previewSize = getOptimalPreviewSize(capabilities);
+                if (previewSize == null || previewSize[0] != mPreviewSize.width || previewSize[1] != mPreviewSize.height) {
+                    if (LOGGING) Log.i(TAG, "Preview size changed, camera restart needed.");
+                    return false;
+                }
+                setPreviewControls(parameters, capabilities);
+                mCamera.setParameters(parameters);
+                if (LOGGING) Log.i(TAG, "Preview parameters updated.");
+                return true;
+            } catch (RuntimeException e) {
+                if (LOGGING)
+                    Log.w(TAG, "Could not update preview parameters : " + e.getMessage());
+                return false;
+            }
+        } else {
+            return false;
+        }
+    }
+
     private boolean startCamera() {
         stopCamera();
         removePreviewSurface();
+        // Startup timings are measured from here.
+        mCaptureStartTime = System.nanoTime();
+        mTimeToOpen = -1;
+        mCameraOpenAttempts = 0;
+        mTimeToFirstPreview.set(-1);
+        mTimeToFirstFrame.set(-1);
         if (checkCameraHardware(mActivity)) {
             mPreviewing = true;
             if (LOGGING) Log.i(TAG, "Initializing preview surface...");
@@ -692,6 +2112,10 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     }
 
     private void stopCamera() {
+        if (mCameraOpenCallback != null) {
+            mCameraOpenCallback = null;
+            getCameraOpener().cancel();
+        }
         if (mCamera != null) {
             try {
                 mCamera.stopPreview();
@@ -706,17 +2130,24 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
             }
         }
         mPreviewing = false;
+        if (mFrameScheduler != null) {
+            mFrameScheduler.clear();
+        }
+        mFrameSequencer.clear();
+        // Held tiles were dropped, the next frame must be a keyframe.
+        resetTileTracker();
+        // Pending frame requests are served by the next camera, if any.
+        releaseLatestFrame();
     }
 
     private int getCameraRotation() {
         int degrees = getDisplayRotation();
 
-        Camera.CameraInfo info = new Camera.CameraInfo();
-        Camera.getCameraInfo(mCameraId, info);
-        int cameraRotationOffset = info.orientation;
+        CameraCapabilities capabilities = getCameraCapabilities();
+        int cameraRotationOffset = capabilities.getOrientation();
 
         int cameraRotation;
-        if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+        if (capabilities.getFacing() == Camera.CameraInfo.CAMERA_FACING_FRONT) {
             cameraRotation = (360 + cameraRotationOffset + degrees) % 360;
         } else {
             cameraRotation = (360 + cameraRotationOffset - degrees) % 360;
@@ -728,12 +2159,11 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     private int getDisplayOrientation() {
         int degrees = getDisplayRotation();
 
-        Camera.CameraInfo info = new Camera.CameraInfo();
-        Camera.getCameraInfo(mCameraId, info);
-        int cameraRotationOffset = info.orientation;
+        CameraCapabilities capabilities = getCameraCapabilities();
+        int cameraRotationOffset = capabilities.getOrientation();
 
         int displayOrientation;
-        if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+        if (capabilities.getFacing() == Camera.CameraInfo.CAMERA_FACING_FRONT) {
             displayOrientation = (cameraRotationOffset + degrees) % 360;
             displayOrientation = (360 - displayOrientation) % 360;  // compensate the mirror
         } else {  // back-facing
@@ -771,11 +2201,14 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     private void setPreviewParameters() {
         if (mCamera != null) {
             // set display orientation
-            mDisplayOrientation = getDisplayOrientation();
+            updateOrientation();
             Camera.Parameters parameters = mCamera.getParameters();
+            // reads supported settings from the cache, or once from the camera parameters.
+            CameraCapabilities capabilities = getCameraCapabilities(parameters);
             // sets optimal preview size.
-            mPreviewSize = getOptimalPreviewSize(parameters);
-            if (mPreviewSize != null) {
+            int[] previewSize = getOptimalPreviewSize(capabilities);
+            if (previewSize != null) {
+                mPreviewSize = mCamera.new Size(previewSize[0], previewSize[1]);
                 parameters.setPreviewSize(mPreviewSize.width, mPreviewSize.height);
                 if (LOGGING)
                     Log.i(TAG, "Preview size is set to w : " + mPreviewSize.width + ", h : " + mPreviewSize.height + ".");
@@ -783,26 +2216,8 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
             // sets camera rotation
             int mCameraRotation = getCameraRotation();
             parameters.setRotation(mCameraRotation);
-            // sets optimal preview fps range.
-            mPreviewFpsRange = getOptimalFrameRate(parameters);
-            if (mPreviewFpsRange != null) {
-                parameters.setPreviewFpsRange(mPreviewFpsRange[0], mPreviewFpsRange[1]);
-                if (LOGGING)
-                    Log.i(TAG, "Preview fps range is set to min : " + (mPreviewFpsRange[0] / 1000) + ", max : " + (mPreviewFpsRange[1] / 1000) + ".");
-            }
-            // sets optimal preview focus mode.
-            mPreviewFocusMode = getOptimalFocusMode(parameters);
-            if (mPreviewFocusMode != null) {
-                parameters.setFocusMode(mPreviewFocusMode);
-                if (LOGGING)
-                    Log.i(TAG, "Preview focus mode is set to : " + mPreviewFocusMode + ".");
-            }
-            // sets flash mode
-            mFlashMode = getOptimalFlashMode(parameters);
-            if (mFlashMode != null) {
-                parameters.setFlashMode(mFlashMode);
-                if (LOGGING) Log.i(TAG, "Preview flash mode is set to : " + mFlashMode + ".");
-            }
+            // sets fps range, focus and flash modes
+            setPreviewControls(parameters, capabilities);
             // sets camera parameters
             mCamera.setParameters(parameters);
             // gets preview pixel format
@@ -810,8 +2225,34 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         }
     }
 
-    private int[] getOptimalFrameRate(Camera.Parameters params) {
-        List<int[]> supportedRanges = params.getSupportedPreviewFpsRange();
+    /**
+     * Sets the parameters that can change while the camera is previewing.
+     */
+    private void setPreviewControls(Camera.Parameters parameters, CameraCapabilities capabilities) {
+        // sets optimal preview fps range.
+        mPreviewFpsRange = getOptimalFrameRate(capabilities);
+        if (mPreviewFpsRange != null) {
+            parameters.setPreviewFpsRange(mPreviewFpsRange[0], mPreviewFpsRange[1]);
+            if (LOGGING)
+                Log.i(TAG, "Preview fps range is set to min : " + (mPreviewFpsRange[0] / 1000) + ", max : " + (mPreviewFpsRange[1] / 1000) + ".");
+        }
+        // sets optimal preview focus mode.
+        mPreviewFocusMode = getOptimalFocusMode(capabilities);
+        if (mPreviewFocusMode != null) {
+            parameters.setFocusMode(mPreviewFocusMode);
+            if (LOGGING)
+                Log.i(TAG, "Preview focus mode is set to : " + mPreviewFocusMode + ".");
+        }
+        // sets flash mode
+        mFlashMode = getOptimalFlashMode(capabilities);
+        if (mFlashMode != null) {
+            parameters.setFlashMode(mFlashMode);
+            if (LOGGING) Log.i(TAG, "Preview flash mode is set to : " + mFlashMode + ".");
+        }
+    }
+
+    private int[] getOptimalFrameRate(CameraCapabilities capabilities) {
+        List<int[]> supportedRanges = capabilities.getPreviewFpsRanges();
 
         int[] optimalFpsRange = new int[]{30, 30};
 
@@ -825,26 +2266,30 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         return optimalFpsRange;
     }
 
-    private String getOptimalFocusMode(Camera.Parameters params) {
-        List<String> focusModes = params.getSupportedFocusModes();
+    private String getOptimalFocusMode(CameraCapabilities capabilities) {
+        List<String> focusModes = capabilities.getFocusModes();
 
         String result;
 
-        if (focusModes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+        if (focusModes.isEmpty()) {
+            result = null;
+        } else if (mFocusMode != null && focusModes.contains(mFocusMode)) {
+            result = mFocusMode;
+        } else if (focusModes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
             result = Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO;
         } else if (focusModes.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
             result = Camera.Parameters.FOCUS_MODE_AUTO;
         } else {
-            result = params.getSupportedFocusModes().get(0);
+            result = focusModes.get(0);
         }
 
         return result;
     }
 
-    private String getOptimalFlashMode(Camera.Parameters parameters) {
+    private String getOptimalFlashMode(CameraCapabilities capabilities) {
         if (mFlashMode != null) {
-            List<String> supportedFlashModes = parameters.getSupportedFlashModes();
-            if (supportedFlashModes != null) {
+            List<String> supportedFlashModes = capabilities.getFlashModes();
+            if (!supportedFlashModes.isEmpty()) {
                 for (String str : supportedFlashModes) {
                     if (str.trim().contains(mFlashMode))
                         return mFlashMode;
@@ -858,34 +2303,34 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         }
     }
 
-    private Camera.Size getOptimalPreviewSize(Camera.Parameters parameters) {
-        List<Camera.Size> sizes = parameters.getSupportedPreviewSizes();
+    private int[] getOptimalPreviewSize(CameraCapabilities capabilities) {
+        List<int[]> sizes = capabilities.getPreviewSizes();
         final double ASPECT_TOLERANCE = 0.1;
         double targetRatio = (double) mCaptureWidth / mCaptureHeight;
-        if (sizes == null) return null;
+        if (sizes.isEmpty()) return null;
 
-        Camera.Size optimalSize = null;
+        int[] optimalSize = null;
         double minDiff = Double.MAX_VALUE;
 
         int targetHeight = mCaptureHeight;
 
         // Try to find an size match aspect ratio and size
-        for (Camera.Size size : sizes) {
-            double ratio = (double) size.width / size.height;
+        for (int[] size : sizes) {
+            double ratio = (double) size[0] / size[1];
             if (Math.abs(ratio - targetRatio) > ASPECT_TOLERANCE) continue;
-            if (Math.abs(size.height - targetHeight) < minDiff) {
+            if (Math.abs(size[1] - targetHeight) < minDiff) {
                 optimalSize = size;
-                minDiff = Math.abs(size.height - targetHeight);
+                minDiff = Math.abs(size[1] - targetHeight);
             }
         }
 
         // Cannot find the one match the aspect ratio, ignore the requirement
         if (optimalSize == null) {
             minDiff = Double.MAX_VALUE;
-            for (Camera.Size size : sizes) {
-                if (Math.abs(size.height - targetHeight) < minDiff) {
+            for (int[] size : sizes) {
+                if (Math.abs(size[1] - targetHeight) < minDiff) {
                     optimalSize = size;
-                    minDiff = Math.abs(size.height - targetHeight);
+                    minDiff = Math.abs(size[1] - targetHeight);
                 }
             }
         }
@@ -896,80 +2341,124 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         return context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA);
     }
 
-    private Camera getCameraInstance() {
-        Camera camera = null;
+    /**
+     * Returns the ids of the cameras with the given facing, from the capabilities cache when possible.
+     */
+    private int[] getCameraIds(int cameraFacing) {
+        List<Integer> cameraIds = new ArrayList<Integer>();
 
         try {
             int cameraId;
-            int cameraCount = Camera.getNumberOfCameras();
-            Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
-
-            for (cameraId = 0; cameraId < cameraCount; cameraId++) {
-                Camera.getCameraInfo(cameraId, cameraInfo);
-                if (cameraInfo.facing == mCameraFacing) {
-                    if (LOGGING) Log.i(TAG, "Trying to open camera : " + cameraId);
-                    try {
-                        mCameraId = cameraId;
-                        //camera = Camera.open(cameraId);
+            CameraCapabilitiesCache cameraCapabilitiesCache = getCameraCapabilitiesCache();
+            mCachedCapabilities = cameraCapabilitiesCache.load();
+
+            if (cameraCapabilitiesCache.getCameraCount() < 0) {
+                // Cold start : every camera is queried once, then remembered.
+                int cameraCount = Camera.getNumberOfCameras();
+                Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+                List<CameraCapabilities> cameras = new ArrayList<CameraCapabilities>();
+
+                for (cameraId = 0; cameraId < cameraCount; cameraId++) {
+                    Camera.getCameraInfo(cameraId, cameraInfo);
+                    cameras.add(new CameraCapabilities(cameraInfo.facing, cameraInfo.orientation));
+                }
 
-                        if (mThread == null) {
-                            mThread = new CameraHandlerThread();
-                        }
+                cameraCapabilitiesCache.setCameras(cameras);
+                saveCameraCapabilitiesCache();
+            }
 
-                        synchronized (mThread) {
-                            camera = mThread.openCamera(cameraId);
-                        }
+            int cameraCount = cameraCapabilitiesCache.getCameraCount();
 
-                        if (LOGGING) Log.i(TAG, "Camera [" + cameraId + "] opened.");
-                        break;
-                    } catch (RuntimeException e) {
-                        if (LOGGING) Log.e(TAG, "Unable to open camera : " + e.getMessage());
-                    }
+            for (cameraId = 0; cameraId < cameraCount; cameraId++) {
+                if (cameraCapabilitiesCache.get(cameraId).getFacing() == cameraFacing) {
+                    cameraIds.add(cameraId);
                 }
             }
         } catch (Exception e) {
             if (LOGGING) Log.e(TAG, "No available camera : " + e.getMessage());
         }
 
-        return camera;
+        int[] result = new int[cameraIds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = cameraIds.get(i);
+        }
+        return result;
     }
 
-    private synchronized Map<String, File> getImageFilesPaths() {
-        Map<String, File> files = new HashMap<String, File>();
-
-        if (mDir != null) {
-            mFileId++;
+    private synchronized CameraCapabilitiesCache getCameraCapabilitiesCache() {
+        if (mCameraCapabilitiesCache == null) {
+            File file = mActivity != null && mActivity.getCacheDir() != null ? new File(mActivity.getCacheDir(), getFilenameSuffix() + "-capabilities.json") : null;
+            String fingerprint = Build.FINGERPRINT + "/" + Build.VERSION.SDK_INT;
+            mCameraCapabilitiesCache = new CameraCapabilitiesCache(file, fingerprint);
+        }
+        return mCameraCapabilitiesCache;
+    }
 
-            for (String fileName : FILENAMES) {
-                if (mFileId > mFps) {
-                    File prevFile = new File(mDir, String.valueOf(fileName.charAt(0)) + (mFileId - mFps) + "-" + getFilenameSuffix() + ".jpg");
-                    if (prevFile.exists()) {
-                        if (prevFile.delete()) {
-                            if (LOGGING)
-                                Log.v(TAG, "Previously cached file " + prevFile.getName() + " deleted !");
-                        } else {
-                            if (LOGGING)
-                                Log.w(TAG, "Could not delete previous cached file " + prevFile.getName() + ".");
-                        }
-                    }
+    private void saveCameraCapabilitiesCache() {
+        final CameraCapabilitiesCache cameraCapabilitiesCache = getCameraCapabilitiesCache();
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cameraCapabilitiesCache.save();
+                } catch (IOException e) {
+                    if (LOGGING) Log.w(TAG, "Could not save camera capabilities : " + e.getMessage());
                 }
+            }
+        });
+    }
 
-                File curFile = new File(mDir, String.valueOf(fileName.charAt(0)) + mFileId + "-" + getFilenameSuffix() + ".jpg");
-                if (curFile.exists()) {
-                    if (curFile.delete()) {
-                        if (LOGGING)
-                            Log.v(TAG, "Current cached file " + curFile.getName() + " deleted !");
-                    } else {
-                        if (LOGGING)
-                            Log.w(TAG, "Could not delete current cached file " + curFile.getName() + ".");
-                    }
-                }
+    /**
+     * Returns facing and orientation of the current camera without querying it.
+     */
+    private CameraCapabilities getCameraCapabilities() {
+        CameraCapabilities capabilities = getCameraCapabilitiesCache().get(mCameraId);
+        if (capabilities == null) {
+            Camera.CameraInfo info = new Camera.CameraInfo();
+            Camera.getCameraInfo(mCameraId, info);
+            capabilities = new CameraCapabilities(info.facing, info.orientation);
+        }
+        return capabilities;
+    }
+
+    /**
+     * Returns the capabilities of the opened camera, reading its supported preview settings only if they are not cached yet.
+     */
+    private CameraCapabilities getCameraCapabilities(Camera.Parameters parameters) {
+        CameraCapabilities capabilities = getCameraCapabilities();
+        if (!capabilities.hasPreviewSettings()) {
+            capabilities = capabilities.withParameters(parameters);
+            getCameraCapabilitiesCache().put(mCameraId, capabilities);
+            saveCameraCapabilitiesCache();
+            mCachedCapabilities = false;
+        }
+        return capabilities;
+    }
+
+    private synchronized FileRingBuffer getImageFiles(String fileName) {
+        // Keeps about one second of images readable by the web view.
+        int slotCount = Math.max(2, mFps);
 
-                files.put(fileName, curFile);
+        FileRingBuffer imageFiles = mImageFiles.get(fileName);
+        if (imageFiles == null || imageFiles.getSlotCount() != slotCount || !mDir.equals(imageFiles.getDir())) {
+            if (imageFiles != null) {
+                imageFiles.close();
             }
+            // Each image name gets its own files : fullsize-0-, thumbnail-0-, and one set per rendition.
+            imageFiles = new FileRingBuffer(mDir, fileName + "-", "-" + getFilenameSuffix() + ".jpg", slotCount);
+            mImageFiles.put(fileName, imageFiles);
+            if (LOGGING)
+                Log.v(TAG, "Image files ring for " + fileName + " initialized with " + slotCount + " slots.");
         }
 
-        return files;
+        return imageFiles;
+    }
+
+    private synchronized void closeImageFiles() {
+        for (FileRingBuffer imageFiles : mImageFiles.values()) {
+            imageFiles.close();
+        }
+        mImageFiles.clear();
     }
 
     private void deleteCachedImageFiles() {
@@ -993,43 +2482,42 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         }
     }
 
-    private boolean saveImage(byte[] bytes, File file) {
-        if (file != null && bytes.length > 0) {
-            FileOutputStream output = null;
+    private String saveImage(byte[] bytes, String fileName) {
+        if (mDir != null && bytes.length > 0) {
             try {
-                output = new FileOutputStream(file);
-                output.write(bytes);
-            } catch (FileNotFoundException e) {
-                if (LOGGING) Log.e(TAG, "Could not find output file : " + e.getMessage());
-                return false;
+                long startTime = System.nanoTime();
+                String path = getImageFiles(fileName).write(bytes);
+                mPipelineStats.recordTime(PipelineStats.STAGE_FILE, System.nanoTime() - startTime);
+                return path;
             } catch (IOException e) {
-                e.printStackTrace();
                 if (LOGGING) Log.e(TAG, "Could not write output file : " + e.getMessage());
-                return false;
-            } finally {
-                if (null != output) {
-                    try {
-                        output.close();
-                    } catch (IOException e) {
-                        if (LOGGING)
-                            Log.e(TAG, "Could not close file output stream : " + e.getMessage());
-                        return false;
-                    }
-                }
-                return true;
+                return null;
             }
         } else {
-            return false;
+            return null;
         }
     }
 
-    private byte[] dataToJpeg(byte[] byteArray, int width, int height) {
+    private byte[] dataToJpeg(byte[] byteArray, int width, int height, Rect rect) {
+        // Intermediate image, decoded again before being sent.
+        long startTime = System.nanoTime();
+        byte[] jpegData = dataToJpeg(byteArray, mPreviewFormat, width, height, rect, JpegQualityController.MAX_QUALITY);
+        mPipelineStats.recordTime(PipelineStats.STAGE_ENCODE, System.nanoTime() - startTime);
+        mPipelineStats.recordAllocation(jpegData.length);
+        return jpegData;
+    }
+
+    private byte[] dataToJpeg(byte[] byteArray, int format, int width, int height, int quality) {
+        return dataToJpeg(byteArray, format, width, height, new Rect(0, 0, width, height), quality);
+    }
+
+    private byte[] dataToJpeg(byte[] byteArray, int format, int width, int height, Rect rect, int quality) {
         if (byteArray.length > 0) {
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             // The second parameter is the actual image format
-            YuvImage yuvImage = new YuvImage(byteArray, mPreviewFormat, width, height, null);
-            // width and height define the size of the bitmap filled with the preview image
-            yuvImage.compressToJpeg(new Rect(0, 0, width, height), 100, out);
+            YuvImage yuvImage = new YuvImage(byteArray, format, width, height, null);
+            // rect defines the part of the preview image compressed
+            yuvImage.compressToJpeg(rect, quality, out);
             // returns the jpeg as bytes array
             return out.toByteArray();
         } else {
@@ -1037,7 +2525,85 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         }
     }
 
-    private byte[] getResizedImage(byte[] byteArray, double ratio) {
+    private YuvTransformer getYuvTransformer(int width, int height, int targetWidth, int targetHeight, int angle) {
+        return getYuvTransformer("fullsize", width, height, targetWidth, targetHeight, angle);
+    }
+
+    private YuvTransformer getYuvTransformer(String name, int width, int height, int targetWidth, int targetHeight, int angle) {
+        boolean mirror = (mCameraFacing == Camera.CameraInfo.CAMERA_FACING_FRONT);
+        return getYuvTransformer(name, mPreviewFormat, width, height, targetWidth, targetHeight, angle, mirror, mRoi);
+    }
+
+    private YuvTransformer getYuvTransformer(String name, int format, int width, int height, int targetWidth, int targetHeight, int angle, boolean mirror) {
+        return getYuvTransformer(name, format, width, height, targetWidth, targetHeight, angle, mirror, null);
+    }
+
+    private synchronized YuvTransformer getRenditionTransformer(Rendition rendition, int width, int height) {
+        String name = "rendition:" + rendition.getName();
+        YuvTransformer transformer = mYuvTransformers.get(name);
+        if (transformer == null
+                || transformer.getWidth() != width
+                || transformer.getHeight() != height
+                || transformer.getTargetWidth() != rendition.getWidth()
+                || transformer.getTargetHeight() != rendition.getHeight()
+                || transformer.isCropToAspect() != rendition.isCrop()) {
+            transformer = new YuvTransformer(ImageFormat.NV21, width, height);
+            transformer.setTargetSize(rendition.getWidth(), rendition.getHeight());
+            transformer.setCropToAspect(rendition.isCrop());
+            transformer.prepare();
+            mYuvTransformers.put(name, transformer);
+        }
+
+        return transformer;
+    }
+
+    private synchronized YuvTransformer getYuvTransformer(String name, int format, int width, int height, int targetWidth, int targetHeight, int angle, boolean mirror, YuvTransformer.Region region) {
+        YuvTransformer transformer = mYuvTransformers.get(name);
+        if (transformer == null
+                || transformer.getFormat() != format
+                || transformer.getWidth() != width
+                || transformer.getHeight() != height
+                || transformer.getRotation() != angle
+                || transformer.isMirror() != mirror
+                || transformer.getTargetWidth() != targetWidth
+                || transformer.getTargetHeight() != targetHeight
+                || (region == null ? transformer.getRegion() != null : !region.equals(transformer.getRegion()))) {
+            transformer = new YuvTransformer(format, width, height);
+            transformer.setTargetSize(targetWidth, targetHeight);
+            transformer.setRotation(angle);
+            transformer.setMirror(mirror);
+            transformer.setRegion(region);
+            transformer.prepare();
+            mYuvTransformers.put(name, transformer);
+        }
+
+        return transformer;
+    }
+
+    /**
+     * One frame in flight per core, so that consecutive frames are encoded in parallel.
+     */
+    private int getDefaultFramesInFlight() {
+        return Math.max(1, Math.min(MAX_DEFAULT_FRAMES_IN_FLIGHT, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private boolean isRawOutput() {
+        return isRawOutput(mUse);
+    }
+
+    private static boolean isRawOutput(String use) {
+        return "rgba".equals(use) || "luma".equals(use);
+    }
+
+    private boolean isStreamOutput() {
+        return "stream".equals(mUse);
+    }
+
+    private boolean isDeltaOutput() {
+        return "data".equals(mUse) || "binary".equals(mUse);
+    }
+
+    private byte[] getResizedImage(byte[] byteArray, double ratio, int quality) {
         if (byteArray.length > 0) {
             Bitmap bitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length);
 
@@ -1047,7 +2613,7 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
             bitmap.recycle();
 
             if (targetWidth > 0 && targetHeight > 0) {
-                return getResizedAndRotatedImage(byteArray, targetWidth, targetHeight, 0);
+                return getResizedAndRotatedImage(byteArray, targetWidth, targetHeight, 0, quality);
             } else {
                 return byteArray;
             }
@@ -1056,8 +2622,9 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         }
     }
 
-    private byte[] getResizedAndRotatedImage(byte[] byteArray, int targetWidth, int targetHeight, int angle) {
+    private byte[] getResizedAndRotatedImage(byte[] byteArray, int targetWidth, int targetHeight, int angle, int quality) {
         if (byteArray.length > 0) {
+            long startTime = System.nanoTime();
             // Sets bitmap factory options
             BitmapFactory.Options bOptions = new BitmapFactory.Options();
             // Set inJustDecodeBounds=true to check dimensions
@@ -1087,8 +2654,10 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                 bOptions.inJustDecodeBounds = false;
                 // Decode unscaled unrotated bitmap
                 Bitmap bitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length, bOptions);
+                long allocatedBytes = bitmap.getByteCount();
                 // Create scaled bitmap
                 bitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                allocatedBytes += bitmap.getByteCount();
 
                 if (angle != 0 || mCameraFacing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
                     final Matrix matrix = new Matrix();
@@ -1105,15 +2674,24 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
 
                     // Create rotated bitmap
                     bitmap = Bitmap.createBitmap(bitmap, 0, 0, width, height, matrix, false);
+                    allocatedBytes += bitmap.getByteCount();
                 }
 
+                long decodeTime = System.nanoTime();
+                mPipelineStats.recordTime(PipelineStats.STAGE_DECODE, decodeTime - startTime);
+
                 ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 100, byteArrayOutputStream);
+                bitmap.compress(Bitmap.CompressFormat.JPEG, quality, byteArrayOutputStream);
 
                 // Recycling bitmap
                 bitmap.recycle();
 
-                return byteArrayOutputStream.toByteArray();
+                byte[] jpegData = byteArrayOutputStream.toByteArray();
+                mPipelineStats.recordTime(PipelineStats.STAGE_REENCODE, System.nanoTime() - decodeTime);
+                mPipelineStats.increment(PipelineStats.COUNTER_ENCODED);
+                mPipelineStats.recordAllocation(allocatedBytes + jpegData.length);
+
+                return jpegData;
             } else {
                 return byteArray;
             }
@@ -1123,61 +2701,167 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
     }
 
     private int[] calculateAspectRatio(int origWidth, int origHeight, int targetWidth, int targetHeight) {
-        int newWidth = targetWidth;
-        int newHeight = targetHeight;
+        return YuvTransformer.calculateAspectRatio(origWidth, origHeight, targetWidth, targetHeight);
+    }
+
+    private void parseOptions(JSONObject options) throws Exception {
+        if (options == null) {
+            return;
+        }
+
+        // usage
+        if (options.has(K_USE_KEY)) {
+            mUse = options.getString(K_USE_KEY);
+        }
+
+        // flash mode
+        if (options.has(K_FLASH_MODE_KEY)) {
+            mFlashMode = getFlashMode(options.getBoolean(K_FLASH_MODE_KEY));
+        }
+
+        // focus mode
+        if (options.has(K_FOCUS_MODE_KEY)) {
+            mFocusMode = options.getString(K_FOCUS_MODE_KEY);
+        }
+
+        // lens orientation
+        if (options.has(K_LENS_ORIENTATION_KEY)) {
+            mCameraFacing = getCameraFacing(options.getString(K_LENS_ORIENTATION_KEY));
+        }
+
+        // fps
+        if (options.has(K_FPS_KEY)) {
+            mRequestedFps = options.getDouble(K_FPS_KEY);
+            mFps = (int) Math.ceil(mRequestedFps);
+        }
+
+        // quality
+        if (options.has(K_QUALITY_KEY)) {
+            mQuality = Math.max(1, Math.min(JpegQualityController.MAX_QUALITY, options.getInt(K_QUALITY_KEY)));
+        }
+
+        // adaptiveQuality
+        if (options.has(K_ADAPTIVE_QUALITY_KEY)) {
+            mAdaptiveQuality = options.getBoolean(K_ADAPTIVE_QUALITY_KEY);
+        }
+
+        // strips
+        if (options.has(K_STRIPS_KEY)) {
+            mStrips = Math.max(0, options.getInt(K_STRIPS_KEY));
+        }
+
+        // mode
+        if (options.has(K_MODE_KEY)) {
+            mMode = "pull".equals(options.getString(K_MODE_KEY)) ? "pull" : "push";
+        }
+
+        // motionThreshold
+        if (options.has(K_MOTION_THRESHOLD_KEY)) {
+            mMotionThreshold = Math.max(0, options.getDouble(K_MOTION_THRESHOLD_KEY));
+        }
+
+        // keepAliveInterval
+        if (options.has(K_KEEP_ALIVE_INTERVAL_KEY)) {
+            mKeepAliveInterval = options.getLong(K_KEEP_ALIVE_INTERVAL_KEY);
+        }
+
+        // delta
+        if (options.has(K_DELTA_KEY)) {
+            mDelta = options.getBoolean(K_DELTA_KEY);
+        }
 
-        // If no new width or height were specified return the original bitmap
-        if (newWidth <= 0 && newHeight <= 0) {
-            newWidth = origWidth;
-            newHeight = origHeight;
+        // keyframeInterval
+        if (options.has(K_KEYFRAME_INTERVAL_KEY)) {
+            mKeyframeInterval = options.getLong(K_KEYFRAME_INTERVAL_KEY);
         }
-        // Only the width was specified
-        else if (newWidth > 0 && newHeight <= 0) {
-            newHeight = (int) (newWidth / (double) origWidth * origHeight);
+
+        // roi
+        if (options.has(K_ROI_KEY)) {
+            mRoi = parseRoi(options.isNull(K_ROI_KEY) ? null : options.getJSONObject(K_ROI_KEY));
+        }
+
+        // renditions
+        if (options.has(K_RENDITIONS_KEY)) {
+            mRenditions = parseRenditions(options.getJSONArray(K_RENDITIONS_KEY));
+        }
+
+        // maxFramesInFlight
+        if (options.has(K_MAX_FRAMES_IN_FLIGHT_KEY)) {
+            int maxFramesInFlight = options.getInt(K_MAX_FRAMES_IN_FLIGHT_KEY);
+            mMaxFramesInFlight = maxFramesInFlight > 0 ? maxFramesInFlight : getDefaultFramesInFlight();
+        }
+
+        // width
+        if (options.has(K_WIDTH_KEY)) {
+            mWidth = mCaptureWidth = mCanvasWidth = options.getInt(K_WIDTH_KEY);
+        }
+
+        // height
+        if (options.has(K_HEIGHT_KEY)) {
+            mHeight = mCaptureHeight = mCanvasHeight = options.getInt(K_HEIGHT_KEY);
+        }
+
+        // hasThumbnail
+        if (options.has(K_HAS_THUMBNAIL_KEY)) {
+            mHasThumbnail = options.getBoolean(K_HAS_THUMBNAIL_KEY);
+        }
+
+        // thumbnailRatio
+        if (options.has(K_THUMBNAIL_RATIO_KEY)) {
+            mThumbnailRatio = options.getDouble(K_THUMBNAIL_RATIO_KEY);
         }
-        // only the height was specified
-        else if (newWidth <= 0 && newHeight > 0) {
-            newWidth = (int) (newHeight / (double) origHeight * origWidth);
+
+        // canvas
+        if (options.has(K_CANVAS_KEY)) {
+            JSONObject canvas = options.getJSONObject(K_CANVAS_KEY);
+            if (canvas.has(K_WIDTH_KEY)) {
+                mCanvasWidth = canvas.getInt(K_WIDTH_KEY);
+            }
+            if (canvas.has(K_HEIGHT_KEY)) {
+                mCanvasHeight = canvas.getInt(K_HEIGHT_KEY);
+            }
         }
-        // If the user specified both a positive width and height
-        // (potentially different aspect ratio) then the width or height is
-        // scaled so that the image fits while maintaining aspect ratio.
-        // Alternatively, the specified width and height could have been
-        // kept and Bitmap.SCALE_TO_FIT specified when scaling, but this
-        // would result in whitespace in the new image.
-        else {
-            double newRatio = newWidth / (double) newHeight;
-            double origRatio = origWidth / (double) origHeight;
 
-            if (origRatio > newRatio) {
-                newHeight = (newWidth * origHeight) / origWidth;
-            } else if (origRatio < newRatio) {
-                newWidth = (newHeight * origWidth) / origHeight;
+        // capture
+        if (options.has(K_CAPTURE_KEY)) {
+            JSONObject capture = options.getJSONObject(K_CAPTURE_KEY);
+            // resolution.width
+            if (capture.has(K_WIDTH_KEY)) {
+                mCaptureWidth = capture.getInt(K_WIDTH_KEY);
+            }
+            // resolution.height
+            if (capture.has(K_HEIGHT_KEY)) {
+                mCaptureHeight = capture.getInt(K_HEIGHT_KEY);
             }
         }
 
-        int[] widthHeight = new int[2];
-        widthHeight[0] = newWidth;
-        widthHeight[1] = newHeight;
+        // delta tiles are JPEG images sent through the bridge.
+        if (mDelta && !isDeltaOutput()) {
+            throw new JSONException("Invalid option delta : not available for use " + mUse + ".");
+        }
 
-        return widthHeight;
+        // parsing additional options
+        parseAdditionalOptions(options);
     }
 
-    private void parseOptions(JSONObject options) throws Exception {
+    /**
+     * Parses the options that can be changed while capturing.
+     */
+    private void parseConfigurationOptions(JSONObject options) throws Exception {
         if (options == null) {
             return;
         }
 
-        // usage
-        if (options.has(K_USE_KEY)) {
-            mUse = options.getString(K_USE_KEY);
-        }
-
         // flash mode
         if (options.has(K_FLASH_MODE_KEY)) {
             mFlashMode = getFlashMode(options.getBoolean(K_FLASH_MODE_KEY));
         }
 
+        // focus mode
+        if (options.has(K_FOCUS_MODE_KEY)) {
+            mFocusMode = options.isNull(K_FOCUS_MODE_KEY) ? null : options.getString(K_FOCUS_MODE_KEY);
+        }
+
         // lens orientation
         if (options.has(K_LENS_ORIENTATION_KEY)) {
             mCameraFacing = getCameraFacing(options.getString(K_LENS_ORIENTATION_KEY));
@@ -1185,7 +2869,38 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
 
         // fps
         if (options.has(K_FPS_KEY)) {
-            mFps = options.getInt(K_FPS_KEY);
+            mRequestedFps = options.getDouble(K_FPS_KEY);
+            mFps = (int) Math.ceil(mRequestedFps);
+        }
+
+        // quality
+        if (options.has(K_QUALITY_KEY)) {
+            mQuality = Math.max(1, Math.min(JpegQualityController.MAX_QUALITY, options.getInt(K_QUALITY_KEY)));
+        }
+
+        // adaptiveQuality
+        if (options.has(K_ADAPTIVE_QUALITY_KEY)) {
+            mAdaptiveQuality = options.getBoolean(K_ADAPTIVE_QUALITY_KEY);
+        }
+
+        // strips
+        if (options.has(K_STRIPS_KEY)) {
+            mStrips = Math.max(0, options.getInt(K_STRIPS_KEY));
+        }
+
+        // mode
+        if (options.has(K_MODE_KEY)) {
+            mMode = "pull".equals(options.getString(K_MODE_KEY)) ? "pull" : "push";
+        }
+
+        // motionThreshold
+        if (options.has(K_MOTION_THRESHOLD_KEY)) {
+            mMotionThreshold = Math.max(0, options.getDouble(K_MOTION_THRESHOLD_KEY));
+        }
+
+        // keepAliveInterval
+        if (options.has(K_KEEP_ALIVE_INTERVAL_KEY)) {
+            mKeepAliveInterval = options.getLong(K_KEEP_ALIVE_INTERVAL_KEY);
         }
 
         // width
@@ -1198,16 +2913,6 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
             mHeight = mCaptureHeight = mCanvasHeight = options.getInt(K_HEIGHT_KEY);
         }
 
-        // hasThumbnail
-        if (options.has(K_HAS_THUMBNAIL_KEY)) {
-            mHasThumbnail = options.getBoolean(K_HAS_THUMBNAIL_KEY);
-        }
-
-        // thumbnailRatio
-        if (options.has(K_THUMBNAIL_RATIO_KEY)) {
-            mThumbnailRatio = options.getDouble(K_THUMBNAIL_RATIO_KEY);
-        }
-
         // canvas
         if (options.has(K_CANVAS_KEY)) {
             JSONObject canvas = options.getJSONObject(K_CANVAS_KEY);
@@ -1231,9 +2936,92 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                 mCaptureHeight = capture.getInt(K_HEIGHT_KEY);
             }
         }
+    }
 
-        // parsing additional options
-        parseAdditionalOptions(options);
+    /**
+     * Sends the session configuration (options, preview, camera) to the capture callback.
+     * Frame messages only carry what changes between frames.
+     */
+    private void sendSessionMessage() {
+        CallbackContext startCaptureCallbackContext = mStartCaptureCallbackContext;
+        if (startCaptureCallbackContext != null) {
+            FrameBufferPool frameBufferPool = mFrameBufferPool;
+            if (frameBufferPool != null) {
+                mSessionHighWaterMark = frameBufferPool.getHighWaterMark();
+            }
+            PluginResult result = new PluginResult(PluginResult.Status.OK, getPluginResultMessage("OK"));
+            result.setKeepCallback(true);
+            startCaptureCallbackContext.sendPluginResult(result);
+        }
+    }
+
+    private JSONObject getPluginResultFrameMessage(JSONObject output) {
+
+        JSONObject pluginResultMessage = new JSONObject();
+
+        try {
+            pluginResultMessage.put("message", "OK");
+            pluginResultMessage.put("output", output);
+        } catch (JSONException e) {
+            if (LOGGING) Log.e(TAG, "Cannot put data.output into JSON result : " + e.getMessage());
+        }
+
+        return pluginResultMessage;
+    }
+
+    /**
+     * Success message of a reconfiguration, with its latency in milliseconds.
+     * When the camera had to be restarted, the latency does not include the asynchronous camera opening.
+     */
+    private JSONObject getPluginResultReconfigurationMessage(long startTime, boolean restarted) {
+
+        JSONObject pluginResultMessage = getPluginResultMessage("OK");
+        JSONObject reconfiguration = new JSONObject();
+
+        try {
+            pluginResultMessage.put("reconfiguration", reconfiguration);
+
+            try {
+                reconfiguration.put("restarted", restarted);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.reconfiguration.restarted into JSON result : " + e.getMessage());
+            }
+
+            try {
+                reconfiguration.put("latency", (System.nanoTime() - startTime) / 1000000.0);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.reconfiguration.latency into JSON result : " + e.getMessage());
+            }
+        } catch (JSONException e) {
+            if (LOGGING)
+                Log.e(TAG, "Cannot put data.reconfiguration into JSON result : " + e.getMessage());
+        }
+
+        return pluginResultMessage;
+    }
+
+    /**
+     * Pipeline counters and per-stage latency percentiles since the plugin started or the stats were reset.
+     */
+    private JSONObject getPluginResultStatsMessage(String message) {
+
+        JSONObject pluginResultMessage = new JSONObject();
+
+        try {
+            pluginResultMessage.put("message", message);
+        } catch (JSONException e) {
+            if (LOGGING) Log.e(TAG, "Cannot put data.message into JSON result : " + e.getMessage());
+        }
+
+        try {
+            pluginResultMessage.put("stats", mPipelineStats.toJSON());
+        } catch (JSONException e) {
+            if (LOGGING) Log.e(TAG, "Cannot put data.stats into JSON result : " + e.getMessage());
+        }
+
+        return pluginResultMessage;
     }
 
     private JSONObject getPluginResultMessage(String message) {
@@ -1301,6 +3089,27 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                     Log.e(TAG, "Cannot put data.options.flashMode into JSON result : " + e.getMessage());
             }
 
+            try {
+                options.put("focusMode", mFocusMode);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.focusMode into JSON result : " + e.getMessage());
+            }
+
+            try {
+                options.put("quality", mQuality);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.quality into JSON result : " + e.getMessage());
+            }
+
+            try {
+                options.put("adaptiveQuality", mAdaptiveQuality);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.adaptiveQuality into JSON result : " + e.getMessage());
+            }
+
             try {
                 options.put("cameraFacing", getCameraFacingToString(mCameraFacing));
             } catch (JSONException e) {
@@ -1322,6 +3131,131 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                     Log.e(TAG, "Cannot put data.options.thumbnailRatio into JSON result : " + e.getMessage());
             }
 
+            try {
+                options.put("maxFramesInFlight", mMaxFramesInFlight);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.maxFramesInFlight into JSON result : " + e.getMessage());
+            }
+
+            try {
+                options.put("mode", mMode);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.mode into JSON result : " + e.getMessage());
+            }
+
+            try {
+                options.put("strips", mStrips);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.strips into JSON result : " + e.getMessage());
+            }
+
+            try {
+                options.put("motionThreshold", mMotionThreshold);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.motionThreshold into JSON result : " + e.getMessage());
+            }
+
+            try {
+                options.put("keepAliveInterval", mKeepAliveInterval);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.keepAliveInterval into JSON result : " + e.getMessage());
+            }
+
+            try {
+                options.put("delta", mDelta);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.delta into JSON result : " + e.getMessage());
+            }
+
+            try {
+                options.put("keyframeInterval", mKeyframeInterval);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.keyframeInterval into JSON result : " + e.getMessage());
+            }
+
+            JSONArray renditions = new JSONArray();
+
+            try {
+                options.put("renditions", renditions);
+
+                for (Rendition rendition : mRenditions) {
+                    JSONObject jsonRendition = new JSONObject();
+                    try {
+                        jsonRendition.put("name", rendition.getName());
+                        jsonRendition.put("width", rendition.getWidth());
+                        jsonRendition.put("height", rendition.getHeight());
+                        jsonRendition.put("format", rendition.getFormat());
+                        jsonRendition.put("quality", rendition.getQuality());
+                        jsonRendition.put("fpsDivisor", rendition.getFpsDivisor());
+                        jsonRendition.put("use", rendition.getUse());
+                        jsonRendition.put("crop", rendition.isCrop());
+                        renditions.put(jsonRendition);
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.options.renditions." + rendition.getName() + " into JSON result : " + e.getMessage());
+                    }
+                }
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.options.renditions into JSON result : " + e.getMessage());
+            }
+
+            YuvTransformer.Region roi = mRoi;
+            if (roi != null) {
+                JSONObject jsonRoi = new JSONObject();
+
+                try {
+                    options.put("roi", jsonRoi);
+
+                    try {
+                        jsonRoi.put("x", roi.left);
+                        jsonRoi.put("y", roi.top);
+                        jsonRoi.put("width", roi.width);
+                        jsonRoi.put("height", roi.height);
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.options.roi.x into JSON result : " + e.getMessage());
+                    }
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.options.roi into JSON result : " + e.getMessage());
+                }
+            }
+
+            FrameBufferPool frameBufferPool = mFrameBufferPool;
+            if (frameBufferPool != null) {
+                JSONObject bufferPool = new JSONObject();
+
+                try {
+                    options.put("bufferPool", bufferPool);
+
+                    try {
+                        bufferPool.put("size", frameBufferPool.getCapacity());
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.options.bufferPool.size into JSON result : " + e.getMessage());
+                    }
+
+                    try {
+                        bufferPool.put("highWaterMark", frameBufferPool.getHighWaterMark());
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.options.bufferPool.highWaterMark into JSON result : " + e.getMessage());
+                    }
+
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.options.bufferPool into JSON result : " + e.getMessage());
+                }
+            }
+
             JSONObject canvas = new JSONObject();
 
             try {
@@ -1455,10 +3389,90 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
                     Log.e(TAG, "Cannot put data.preview.fps into JSON result : " + e.getMessage());
             }
 
+            try {
+                preview.put("cachedCapabilities", mCachedCapabilities);
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.preview.cachedCapabilities into JSON result : " + e.getMessage());
+            }
+
+            JSONObject timings = new JSONObject();
+
+            try {
+                preview.put("timings", timings);
+
+                long timeToOpen = mTimeToOpen;
+                if (timeToOpen >= 0) {
+                    try {
+                        timings.put("open", timeToOpen / 1000000.0);
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.preview.timings.open into JSON result : " + e.getMessage());
+                    }
+                }
+
+                try {
+                    timings.put("openAttempts", mCameraOpenAttempts);
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.preview.timings.openAttempts into JSON result : " + e.getMessage());
+                }
+
+                long timeToFirstPreview = mTimeToFirstPreview.get();
+                if (timeToFirstPreview >= 0) {
+                    try {
+                        timings.put("firstPreview", timeToFirstPreview / 1000000.0);
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.preview.timings.firstPreview into JSON result : " + e.getMessage());
+                    }
+                }
+
+                long timeToFirstFrame = mTimeToFirstFrame.get();
+                if (timeToFirstFrame >= 0) {
+                    try {
+                        timings.put("firstFrame", timeToFirstFrame / 1000000.0);
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.preview.timings.firstFrame into JSON result : " + e.getMessage());
+                    }
+                }
+            } catch (JSONException e) {
+                if (LOGGING)
+                    Log.e(TAG, "Cannot put data.preview.timings into JSON result : " + e.getMessage());
+            }
+
         } catch (JSONException e) {
             if (LOGGING) Log.e(TAG, "Cannot put data.preview into JSON result : " + e.getMessage());
         }
 
+        MjpegServer mjpegServer = mMjpegServer;
+        if (mjpegServer != null) {
+            JSONObject stream = new JSONObject();
+
+            try {
+                pluginResultMessage.put("stream", stream);
+
+                try {
+                    stream.put("fullsize", mjpegServer.getUrl("fullsize"));
+                } catch (JSONException e) {
+                    if (LOGGING)
+                        Log.e(TAG, "Cannot put data.stream.fullsize into JSON result : " + e.getMessage());
+                }
+
+                if (mHasThumbnail) {
+                    try {
+                        stream.put("thumbnail", mjpegServer.getUrl("thumbnail"));
+                    } catch (JSONException e) {
+                        if (LOGGING)
+                            Log.e(TAG, "Cannot put data.stream.thumbnail into JSON result : " + e.getMessage());
+                    }
+                }
+            } catch (JSONException e) {
+                if (LOGGING) Log.e(TAG, "Cannot put data.stream into JSON result : " + e.getMessage());
+            }
+        }
+
         try {
             pluginResultMessage.put("output", output);
         } catch (JSONException e) {
@@ -1560,42 +3574,62 @@ public class CanvasCamera extends CordovaPlugin implements CanvasCameraInterface
         }
     }
 
-    private static class CameraHandlerThread extends HandlerThread {
-        private Camera mCamera = null;
-        private Handler mHandler = null;
+    private static class FrameOrientation {
+        final int displayOrientation;
+        final String orientation;
 
-        CameraHandlerThread() {
-            super("CameraHandlerThread");
-            start();
-            mHandler = new Handler(getLooper());
+        FrameOrientation(int displayOrientation, String orientation) {
+            this.displayOrientation = displayOrientation;
+            this.orientation = orientation;
         }
+    }
 
-        private synchronized void cameraOpened() {
-            notify();
-        }
+    private static class PyramidLevel {
+        final byte[] data;
+        final int width;
+        final int height;
 
-        public Camera openCamera(final int cameraId) {
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        mCamera = Camera.open(cameraId);
-                        if (LOGGING) Log.i(TAG, "Camera [" + cameraId + "] opened.");
-                    } catch (RuntimeException e) {
-                        if (LOGGING) Log.e(TAG, "Unable to open camera : " + e.getMessage());
-                    }
-                    cameraOpened();
-                }
-            });
+        PyramidLevel(byte[] data, int width, int height) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+        }
+    }
 
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                if (LOGGING)
-                    Log.w(TAG, "Camera opening thread wait was interrupted : " + e.getMessage());
-            }
+    private static class ImageResult {
+        final String name;
+        // Bridge result, or null for a streamed image.
+        final PluginResult result;
+        // Streamed image, or null.
+        final byte[] data;
+        final int size;
+        // Time spent building the result, in nanoseconds.
+        final long resultTime;
+
+        ImageResult(String name, PluginResult result, byte[] data, int size, long resultTime) {
+            this.name = name;
+            this.result = result;
+            this.data = data;
+            this.size = size;
+            this.resultTime = resultTime;
+        }
+    }
 
-            return mCamera;
+    private static class PreviewFrame {
+        final byte[] data;
+        final Camera camera;
+        final long id;
+        // System.nanoTime() when the camera delivered the frame.
+        final long timestamp;
+        // Motion score against the last emitted frame, or -1 if not measured.
+        final double motion;
+
+        PreviewFrame(byte[] data, Camera camera, long id, long timestamp, double motion) {
+            this.data = data;
+            this.camera = camera;
+            this.id = id;
+            this.timestamp = timestamp;
+            this.motion = motion;
         }
     }
 }
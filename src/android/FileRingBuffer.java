@@ -0,0 +1,120 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed set of image files reused round-robin.
+ * <p>
+ * Slot files are created once and kept open, each write rewrites a slot in place through its
+ * FileChannel instead of creating and deleting a file per frame. Every write returns a path
+ * with a unique version query string so that readers never get a cached image.
+ */
+public class FileRingBuffer {
+    private final File mDir;
+    private final String mPrefix;
+    private final String mSuffix;
+    private final Slot[] mSlots;
+
+    private int mNextSlot = 0;
+    private long mVersion = 0;
+
+    public FileRingBuffer(File dir, String prefix, String suffix, int slotCount) {
+        if (slotCount < 1) {
+            throw new IllegalArgumentException("Invalid slot count : " + slotCount);
+        }
+        mDir = dir;
+        mPrefix = prefix;
+        mSuffix = suffix;
+        mSlots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            mSlots[i] = new Slot(new File(dir, prefix + i + suffix));
+        }
+    }
+
+    public File getDir() {
+        return mDir;
+    }
+
+    public String getPrefix() {
+        return mPrefix;
+    }
+
+    public String getSuffix() {
+        return mSuffix;
+    }
+
+    public int getSlotCount() {
+        return mSlots.length;
+    }
+
+    /**
+     * Writes the bytes to the next slot and returns its versioned path.
+     */
+    public String write(byte[] bytes) throws IOException {
+        Slot slot;
+        long version;
+
+        synchronized (this) {
+            slot = mSlots[mNextSlot];
+            mNextSlot = (mNextSlot + 1) % mSlots.length;
+            version = ++mVersion;
+        }
+
+        slot.write(bytes);
+
+        return slot.file.getPath() + "?v=" + version;
+    }
+
+    /**
+     * Closes every slot file. Slots are opened again on the next write.
+     */
+    public void close() {
+        for (Slot slot : mSlots) {
+            slot.close();
+        }
+    }
+
+    private static class Slot {
+        final File file;
+
+        private RandomAccessFile mRandomAccessFile = null;
+        private FileChannel mChannel = null;
+
+        Slot(File file) {
+            this.file = file;
+        }
+
+        synchronized void write(byte[] bytes) throws IOException {
+            if (mChannel == null || !mChannel.isOpen()) {
+                mRandomAccessFile = new RandomAccessFile(file, "rw");
+                mChannel = mRandomAccessFile.getChannel();
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += mChannel.write(buffer, position);
+            }
+            // Drops the tail of a previous, larger image.
+            if (mChannel.size() > bytes.length) {
+                mChannel.truncate(bytes.length);
+            }
+        }
+
+        synchronized void close() {
+            if (mRandomAccessFile != null) {
+                try {
+                    mRandomAccessFile.close();
+                } catch (IOException e) {
+                    // Nothing left to do with this slot.
+                }
+                mRandomAccessFile = null;
+                mChannel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+/**
+ * Bounded set of recyclable preview frame buffers.
+ * <p>
+ * Buffers are handed to the camera, acquired when a frame is delivered in one of them
+ * and released once the frame has been processed, so that they can be queued again.
+ */
+public class FrameBufferPool {
+    private final int mCapacity;
+
+    private byte[][] mBuffers = new byte[0][];
+    private boolean[] mInUse = new boolean[0];
+    private int mBufferSize = 0;
+    private int mInUseCount = 0;
+    private int mHighWaterMark = 0;
+
+    public FrameBufferPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid pool capacity : " + capacity);
+        }
+        mCapacity = capacity;
+    }
+
+    /**
+     * Returns the pool buffers, allocating them again when the buffer size changed
+     * or when some of them are still being processed. Usage counters are reset.
+     */
+    public synchronized byte[][] allocate(int bufferSize) {
+        if (bufferSize != mBufferSize || mBuffers.length != mCapacity || mInUseCount > 0) {
+            mBuffers = new byte[mCapacity][];
+            for (int i = 0; i < mCapacity; i++) {
+                mBuffers[i] = new byte[bufferSize];
+            }
+            mBufferSize = bufferSize;
+        }
+        mInUse = new boolean[mCapacity];
+        mInUseCount = 0;
+        mHighWaterMark = 0;
+
+        return mBuffers.clone();
+    }
+
+    /**
+     * Marks a buffer delivered by the camera as being processed.
+     * Returns false if the buffer does not belong to the pool.
+     */
+    public synchronized boolean acquire(byte[] buffer) {
+        int index = indexOf(buffer);
+        if (index < 0 || mInUse[index]) {
+            return false;
+        }
+        mInUse[index] = true;
+        mInUseCount++;
+        if (mInUseCount > mHighWaterMark) {
+            mHighWaterMark = mInUseCount;
+        }
+        return true;
+    }
+
+    /**
+     * Marks a buffer as processed.
+     * Returns true if the buffer belongs to the pool and can be queued again.
+     */
+    public synchronized boolean release(byte[] buffer) {
+        int index = indexOf(buffer);
+        if (index < 0 || !mInUse[index]) {
+            return false;
+        }
+        mInUse[index] = false;
+        mInUseCount--;
+        return true;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public synchronized int getBufferSize() {
+        return mBufferSize;
+    }
+
+    public synchronized int getInUseCount() {
+        return mInUseCount;
+    }
+
+    public synchronized int getHighWaterMark() {
+        return mHighWaterMark;
+    }
+
+    private int indexOf(byte[] buffer) {
+        for (int i = 0; i < mBuffers.length; i++) {
+            if (mBuffers[i] == buffer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,68 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+/**
+ * Decides from frame timestamps which camera frames are kept to honor a requested frame rate.
+ * <p>
+ * Deadlines advance by a fixed interval, so fractional rates such as 12.5 fps are met on average
+ * even when the camera delivers frames at a multiple of another rate.
+ */
+public class FrameRateGovernor {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final double mFps;
+    private final long mInterval;
+    private final long mTolerance;
+
+    private long mNextFrameTime = Long.MIN_VALUE;
+    private volatile long mAcceptedCount = 0;
+    private volatile long mThrottledCount = 0;
+
+    /**
+     * @param fps requested frame rate. Zero or negative values disable throttling.
+     */
+    public FrameRateGovernor(double fps) {
+        mFps = fps;
+        mInterval = fps > 0 ? Math.round(NANOS_PER_SECOND / fps) : 0;
+        // Absorbs the camera frame delivery jitter.
+        mTolerance = mInterval / 4;
+    }
+
+    public double getFps() {
+        return mFps;
+    }
+
+    /**
+     * Returns true if the frame captured at the given time should be processed.
+     *
+     * @param timestamp a monotonic timestamp in nanoseconds, such as System.nanoTime().
+     */
+    public synchronized boolean accept(long timestamp) {
+        if (mInterval <= 0) {
+            mAcceptedCount++;
+            return true;
+        }
+
+        if (mNextFrameTime != Long.MIN_VALUE && timestamp < mNextFrameTime - mTolerance) {
+            mThrottledCount++;
+            return false;
+        }
+
+        if (mNextFrameTime == Long.MIN_VALUE || timestamp - mNextFrameTime >= mInterval) {
+            // First frame or late by more than an interval : do not try to catch up with a burst.
+            mNextFrameTime = timestamp + mInterval;
+        } else {
+            mNextFrameTime += mInterval;
+        }
+
+        mAcceptedCount++;
+        return true;
+    }
+
+    public long getAcceptedCount() {
+        return mAcceptedCount;
+    }
+
+    public long getThrottledCount() {
+        return mThrottledCount;
+    }
+}
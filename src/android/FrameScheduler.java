@@ -0,0 +1,199 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes frames on a dedicated executor with at most a fixed number of frames in flight.
+ * <p>
+ * When every worker is busy, the newest frame waits in a single pending slot and replaces
+ * any older frame waiting there, which is dropped.
+ */
+public class FrameScheduler<T> {
+
+    public interface FrameHandler<T> {
+        /**
+         * Called on a worker thread to process a frame.
+         */
+        void onFrame(T frame);
+
+        /**
+         * Called when a frame is dropped without being processed.
+         */
+        void onFrameDropped(T frame);
+
+        /**
+         * Called on the worker thread when processing a frame threw, the frame is not counted as processed.
+         */
+        void onFrameFailed(T frame, RuntimeException e);
+    }
+
+    private final int mMaxFramesInFlight;
+    private final FrameHandler<T> mHandler;
+    private final ExecutorService mExecutor;
+
+    private T mPendingFrame = null;
+    private int mFramesInFlight = 0;
+    private boolean mShutdown = false;
+
+    private long mReceivedCount = 0;
+    private long mProcessedCount = 0;
+    private long mDroppedCount = 0;
+    private long mFailedCount = 0;
+
+    public FrameScheduler(int maxFramesInFlight, FrameHandler<T> handler) {
+        if (maxFramesInFlight < 1) {
+            throw new IllegalArgumentException("Invalid number of frames in flight : " + maxFramesInFlight);
+        }
+        mMaxFramesInFlight = maxFramesInFlight;
+        mHandler = handler;
+        mExecutor = Executors.newFixedThreadPool(maxFramesInFlight, new ThreadFactory() {
+            private final AtomicInteger mThreadCount = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CanvasCameraFrame-" + mThreadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getMaxFramesInFlight() {
+        return mMaxFramesInFlight;
+    }
+
+    /**
+     * Schedules a frame. Never blocks.
+     */
+    public void submit(T frame) {
+        T droppedFrame = null;
+        boolean start = false;
+
+        synchronized (this) {
+            mReceivedCount++;
+            if (mShutdown) {
+                mDroppedCount++;
+                droppedFrame = frame;
+            } else if (mFramesInFlight < mMaxFramesInFlight) {
+                mFramesInFlight++;
+                start = true;
+            } else {
+                if (mPendingFrame != null) {
+                    mDroppedCount++;
+                    droppedFrame = mPendingFrame;
+                }
+                mPendingFrame = frame;
+            }
+        }
+
+        if (droppedFrame != null) {
+            mHandler.onFrameDropped(droppedFrame);
+        }
+
+        if (start) {
+            try {
+                mExecutor.execute(new Worker(frame));
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    mFramesInFlight--;
+                    mDroppedCount++;
+                }
+                mHandler.onFrameDropped(frame);
+            }
+        }
+    }
+
+    /**
+     * Drops the pending frame, if any.
+     */
+    public void clear() {
+        T droppedFrame;
+
+        synchronized (this) {
+            droppedFrame = mPendingFrame;
+            mPendingFrame = null;
+            if (droppedFrame != null) {
+                mDroppedCount++;
+            }
+        }
+
+        if (droppedFrame != null) {
+            mHandler.onFrameDropped(droppedFrame);
+        }
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            mShutdown = true;
+        }
+        clear();
+        mExecutor.shutdown();
+    }
+
+    public synchronized long getReceivedCount() {
+        return mReceivedCount;
+    }
+
+    public synchronized long getProcessedCount() {
+        return mProcessedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return mFailedCount;
+    }
+
+    public synchronized int getFramesInFlight() {
+        return mFramesInFlight;
+    }
+
+    private class Worker implements Runnable {
+        private final T mFirstFrame;
+
+        Worker(T frame) {
+            mFirstFrame = frame;
+        }
+
+        @Override
+        public void run() {
+            T frame = mFirstFrame;
+            while (frame != null) {
+                boolean processed = false;
+                try {
+                    mHandler.onFrame(frame);
+                    processed = true;
+                } catch (RuntimeException e) {
+                    // A failing frame must not stop the worker.
+                    try {
+                        mHandler.onFrameFailed(frame, e);
+                    } catch (RuntimeException ignored) {
+                        // Nothing left to report to.
+                    }
+                }
+                synchronized (FrameScheduler.this) {
+                    if (processed) {
+                        mProcessedCount++;
+                    } else {
+                        mFailedCount++;
+                    }
+                    // Keeps working on the newest pending frame, if any.
+                    frame = null;
+                    if (!mShutdown) {
+                        frame = mPendingFrame;
+                        mPendingFrame = null;
+                    }
+                    if (frame == null) {
+                        mFramesInFlight--;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Delivers the results of frames processed in parallel in capture order.
+ * <p>
+ * Frames are registered in capture order before being processed. Results of the oldest frame
+ * still being processed are delivered right away, results of newer frames are held until every
+ * older frame has ended. Results of frames that were not registered, or that arrive after a
+ * newer frame was delivered, are discarded. Results of frames forgotten by clear() are dropped
+ * without being discarded, they are not late.
+ */
+public class FrameSequencer<T> {
+
+    public interface Delivery<T> {
+        /**
+         * Called in capture order, with the sequencer locked.
+         */
+        void onDeliver(long frameId, T result);
+
+        /**
+         * Called for a result that cannot be delivered in order.
+         */
+        void onDiscard(long frameId, T result);
+    }
+
+    private final Delivery<T> mDelivery;
+    private final TreeMap<Long, Frame<T>> mFrames = new TreeMap<Long, Frame<T>>();
+
+    private long mLastDeliveredId = 0;
+    private long mClearedId = 0;
+    private long mHeldCount = 0;
+
+    public FrameSequencer(Delivery<T> delivery) {
+        mDelivery = delivery;
+    }
+
+    /**
+     * Registers a frame. Must be called in capture order, before any result of the frame.
+     */
+    public synchronized void begin(long frameId) {
+        if (frameId > mLastDeliveredId && !mFrames.containsKey(frameId)) {
+            mFrames.put(frameId, new Frame<T>());
+        }
+    }
+
+    /**
+     * Delivers a result of a frame, or holds it until older frames have ended.
+     */
+    public synchronized void submit(long frameId, T result) {
+        Frame<T> frame = mFrames.get(frameId);
+        if (frame == null && frameId <= mClearedId) {
+            // Still being processed when the frame was cleared.
+            return;
+        }
+        if (frame == null || frameId < mLastDeliveredId) {
+            mDelivery.onDiscard(frameId, result);
+        } else if (frameId == mFrames.firstKey()) {
+            deliver(frameId, result);
+        } else {
+            frame.results.add(result);
+            mHeldCount++;
+        }
+    }
+
+    /**
+     * Marks a frame as ended, whether it had results or not, and delivers the results it held back.
+     */
+    public synchronized void end(long frameId) {
+        Frame<T> frame = mFrames.get(frameId);
+        if (frame != null) {
+            frame.ended = true;
+            flush();
+        }
+    }
+
+    /**
+     * Forgets every registered frame. Held results, and results later submitted for these frames,
+     * are dropped without being discarded.
+     */
+    public synchronized void clear() {
+        if (!mFrames.isEmpty()) {
+            mClearedId = Math.max(mClearedId, mFrames.lastKey());
+        }
+        mFrames.clear();
+    }
+
+    /**
+     * Returns the number of results that were held back to be delivered in order.
+     */
+    public synchronized long getHeldCount() {
+        return mHeldCount;
+    }
+
+    private void flush() {
+        while (!mFrames.isEmpty()) {
+            Map.Entry<Long, Frame<T>> head = mFrames.firstEntry();
+            Frame<T> frame = head.getValue();
+            if (!frame.results.isEmpty()) {
+                List<T> results = frame.results;
+                frame.results = new ArrayList<T>();
+                for (T result : results) {
+                    deliver(head.getKey(), result);
+                }
+            }
+            if (!frame.ended) {
+                break;
+            }
+            mFrames.remove(head.getKey());
+        }
+    }
+
+    private void deliver(long frameId, T result) {
+        mLastDeliveredId = Math.max(mLastDeliveredId, frameId);
+        mDelivery.onDeliver(frameId, result);
+    }
+
+    private static class Frame<T> {
+        List<T> results = new ArrayList<T>();
+        boolean ended = false;
+    }
+}
@@ -0,0 +1,89 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+/**
+ * Chooses the JPEG quality of the frames.
+ * <p>
+ * In adaptive mode, the quality goes down by steps while the measured time to encode and send
+ * a frame exceeds the frame budget implied by the frame rate, and goes back up to the requested
+ * quality when there is headroom again.
+ */
+public class JpegQualityController {
+    public static final int MIN_QUALITY = 30;
+    public static final int MAX_QUALITY = 100;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final int QUALITY_STEP = 5;
+    // Frames measured between two adjustments, so that each one can take effect.
+    private static final int ADJUSTMENT_INTERVAL = 5;
+    // Raises the quality only below this fraction of the frame budget.
+    private static final double HEADROOM_RATIO = 0.6;
+    // Weight of the last measure in the moving average.
+    private static final double SMOOTHING = 0.2;
+
+    private final int mMaxQuality;
+    private final boolean mAdaptive;
+    private final long mFrameBudget;
+
+    private volatile int mQuality;
+    private double mAverageTime = -1;
+    private int mFramesSinceAdjustment = 0;
+
+    /**
+     * @param quality  requested quality, the maximum quality in adaptive mode.
+     * @param adaptive true to adapt the quality to the measured frame times.
+     * @param fps      frame rate giving the frame budget. Zero or negative values disable adaptation.
+     */
+    public JpegQualityController(int quality, boolean adaptive, double fps) {
+        mMaxQuality = clamp(quality, 1, MAX_QUALITY);
+        mAdaptive = adaptive && fps > 0;
+        mFrameBudget = fps > 0 ? Math.round(NANOS_PER_SECOND / fps) : 0;
+        mQuality = mMaxQuality;
+    }
+
+    public int getQuality() {
+        return mQuality;
+    }
+
+    public int getMaxQuality() {
+        return mMaxQuality;
+    }
+
+    public boolean isAdaptive() {
+        return mAdaptive;
+    }
+
+    /**
+     * Reports the time spent encoding and sending a frame, in nanoseconds.
+     */
+    public synchronized void report(long elapsed) {
+        if (!mAdaptive) {
+            return;
+        }
+
+        mAverageTime = mAverageTime < 0 ? elapsed : mAverageTime + SMOOTHING * (elapsed - mAverageTime);
+
+        if (++mFramesSinceAdjustment < ADJUSTMENT_INTERVAL) {
+            return;
+        }
+
+        int minQuality = Math.min(MIN_QUALITY, mMaxQuality);
+        if (mAverageTime > mFrameBudget && mQuality > minQuality) {
+            mQuality = Math.max(minQuality, mQuality - QUALITY_STEP);
+            mFramesSinceAdjustment = 0;
+        } else if (mAverageTime < mFrameBudget * HEADROOM_RATIO && mQuality < mMaxQuality) {
+            mQuality = Math.min(mMaxQuality, mQuality + QUALITY_STEP);
+            mFramesSinceAdjustment = 0;
+        }
+    }
+
+    /**
+     * Returns the moving average of the reported frame times, in milliseconds, or -1 if nothing was reported.
+     */
+    public synchronized double getAverageTime() {
+        return mAverageTime < 0 ? -1 : mAverageTime / 1000000.0;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
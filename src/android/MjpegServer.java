@@ -0,0 +1,338 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loopback HTTP server streaming JPEG images as multipart/x-mixed-replace (MJPEG) streams.
+ * <p>
+ * The server only listens on 127.0.0.1 and only answers requests carrying its token, such as
+ * {@code GET /fullsize?token=...}. Each client is sent the newest image of its stream, a slow
+ * client skips images instead of delaying the others. This class has no Android dependency.
+ */
+public class MjpegServer {
+    private static final String BOUNDARY = "canvascamera";
+    private static final String CHARSET = "US-ASCII";
+    private static final int MAX_CLIENTS = 8;
+    private static final int MAX_REQUEST_SIZE = 8192;
+    private static final int REQUEST_TIMEOUT = 5000;
+
+    private final String mToken;
+    private final Map<String, Stream> mStreams = new HashMap<String, Stream>();
+    private final Set<Socket> mClients = new HashSet<Socket>();
+
+    private ServerSocket mServerSocket = null;
+    private Thread mAcceptThread = null;
+    private volatile boolean mStopped = false;
+    private int mClientCount = 0;
+
+    /**
+     * @param token secret every request must carry.
+     * @param names names of the streams served, such as "fullsize".
+     */
+    public MjpegServer(String token, String... names) {
+        mToken = token;
+        for (String name : names) {
+            mStreams.put(name, new Stream());
+        }
+    }
+
+    /**
+     * Returns a random 128 bits token, hex encoded.
+     */
+    public static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b & 0xff));
+        }
+        return token.toString();
+    }
+
+    public String getToken() {
+        return mToken;
+    }
+
+    /**
+     * Binds an ephemeral loopback port and starts accepting clients. Returns the port.
+     */
+    public synchronized int start() throws IOException {
+        if (mServerSocket == null) {
+            mStopped = false;
+            final ServerSocket serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+            mServerSocket = serverSocket;
+            mAcceptThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    accept(serverSocket);
+                }
+            }, "CanvasCameraStream");
+            mAcceptThread.setDaemon(true);
+            mAcceptThread.start();
+        }
+        return mServerSocket.getLocalPort();
+    }
+
+    public synchronized int getPort() {
+        return mServerSocket != null ? mServerSocket.getLocalPort() : -1;
+    }
+
+    /**
+     * Returns the URL of a stream, token included, or null if the server is not started.
+     */
+    public synchronized String getUrl(String name) {
+        if (mServerSocket == null || !mStreams.containsKey(name)) {
+            return null;
+        }
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/" + name + "?token=" + mToken;
+    }
+
+    public synchronized int getClientCount() {
+        return mClientCount;
+    }
+
+    /**
+     * Publishes the newest image of a stream. Never blocks on clients.
+     */
+    public void publish(String name, byte[] jpeg) {
+        Stream stream = mStreams.get(name);
+        if (stream != null) {
+            stream.publish(jpeg);
+        }
+    }
+
+    /**
+     * Closes the server and every client connection.
+     */
+    public void stop() {
+        Set<Socket> clients;
+
+        synchronized (this) {
+            mStopped = true;
+            if (mServerSocket != null) {
+                closeQuietly(mServerSocket);
+                mServerSocket = null;
+                mAcceptThread = null;
+            }
+            clients = new HashSet<Socket>(mClients);
+            mClients.clear();
+        }
+
+        for (Socket client : clients) {
+            closeQuietly(client);
+        }
+        for (Stream stream : mStreams.values()) {
+            stream.wakeUp();
+        }
+    }
+
+    private void accept(ServerSocket serverSocket) {
+        while (!mStopped) {
+            final Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                // Closed by stop().
+                break;
+            }
+
+            synchronized (this) {
+                if (mStopped || mClientCount >= MAX_CLIENTS) {
+                    respond(client, "503 Service Unavailable");
+                    continue;
+                }
+                mClientCount++;
+                mClients.add(client);
+            }
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(client);
+                    } finally {
+                        closeQuietly(client);
+                        synchronized (MjpegServer.this) {
+                            mClients.remove(client);
+                            mClientCount--;
+                        }
+                    }
+                }
+            }, "CanvasCameraStreamClient");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket client) {
+        String target;
+        try {
+            client.setSoTimeout(REQUEST_TIMEOUT);
+            client.setTcpNoDelay(true);
+            target = readRequestTarget(client.getInputStream());
+        } catch (IOException e) {
+            return;
+        }
+
+        if (target == null) {
+            respond(client, "400 Bad Request");
+            return;
+        }
+
+        int query = target.indexOf('?');
+        String path = query >= 0 ? target.substring(0, query) : target;
+        String token = getParameter(query >= 0 ? target.substring(query + 1) : "", "token");
+
+        if (token == null || !MessageDigest.isEqual(token.getBytes(), mToken.getBytes())) {
+            respond(client, "403 Forbidden");
+            return;
+        }
+
+        Stream stream = path.startsWith("/") ? mStreams.get(path.substring(1)) : null;
+        if (stream == null) {
+            respond(client, "404 Not Found");
+            return;
+        }
+
+        try {
+            OutputStream out = client.getOutputStream();
+            out.write(("HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n"
+                    + "Cache-Control: no-cache, no-store, must-revalidate\r\n"
+                    + "Pragma: no-cache\r\n"
+                    + "Access-Control-Allow-Origin: *\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(CHARSET));
+            out.flush();
+
+            long version = 0;
+            while (!mStopped) {
+                Stream.Image image = stream.await(version);
+                if (image == null) {
+                    break;
+                }
+                version = image.version;
+                out.write(("--" + BOUNDARY + "\r\n"
+                        + "Content-Type: image/jpeg\r\n"
+                        + "Content-Length: " + image.data.length + "\r\n\r\n").getBytes(CHARSET));
+                out.write(image.data);
+                out.write("\r\n".getBytes(CHARSET));
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Client gone.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the request line and headers, returns the target of a GET request or null.
+     */
+    private static String readRequestTarget(InputStream in) throws IOException {
+        StringBuilder request = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            request.append((char) c);
+            if (request.length() > MAX_REQUEST_SIZE) {
+                return null;
+            }
+            int length = request.length();
+            if (length >= 4 && request.charAt(length - 1) == '\n' && request.charAt(length - 2) == '\r'
+                    && request.charAt(length - 3) == '\n' && request.charAt(length - 4) == '\r') {
+                break;
+            }
+        }
+
+        int end = request.indexOf("\r\n");
+        String[] requestLine = (end >= 0 ? request.substring(0, end) : request.toString()).split(" ");
+        if (requestLine.length != 3 || !"GET".equals(requestLine[0])) {
+            return null;
+        }
+        return requestLine[1];
+    }
+
+    private static String getParameter(String query, String name) {
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && name.equals(parameter.substring(0, equals))) {
+                return parameter.substring(equals + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void respond(Socket client, String status) {
+        try {
+            OutputStream out = client.getOutputStream();
+            out.write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(CHARSET));
+            out.flush();
+        } catch (IOException e) {
+            // Client gone.
+        } finally {
+            closeQuietly(client);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do with this socket.
+        }
+    }
+
+    private static void closeQuietly(ServerSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do with this socket.
+        }
+    }
+
+    private class Stream {
+        private Image mImage = null;
+        private long mVersion = 0;
+
+        synchronized void publish(byte[] data) {
+            mImage = new Image(data, ++mVersion);
+            notifyAll();
+        }
+
+        synchronized void wakeUp() {
+            notifyAll();
+        }
+
+        /**
+         * Waits for an image newer than the given version. Returns null once the server is stopped.
+         */
+        synchronized Image await(long version) throws InterruptedException {
+            while (!mStopped && (mImage == null || mImage.version <= version)) {
+                wait();
+            }
+            return mStopped ? null : mImage;
+        }
+
+        private class Image {
+            final byte[] data;
+            final long version;
+
+            Image(byte[] data, long version) {
+                this.data = data;
+                this.version = version;
+            }
+        }
+    }
+}
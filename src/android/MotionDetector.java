@@ -0,0 +1,137 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import java.util.TreeMap;
+
+/**
+ * Skips frames of a scene that has not changed since the last emitted frame.
+ * <p>
+ * The motion score of a frame is the mean absolute difference, from 0 to 255, between a grid of
+ * luma samples of the frame and the same samples of the last emitted frame. Frames scoring below
+ * the threshold are skipped, except for a keep-alive frame emitted at a minimum rate. Comparing
+ * against the last emitted frame, rather than the previous one, catches slow changes too. A frame
+ * counts as emitted once it is delivered, not when it passes the detector.
+ */
+public class MotionDetector {
+    private static final long NANOS_PER_MILLISECOND = 1000000L;
+    // At most this many samples per row and per column, a few thousand reads per frame.
+    private static final int GRID_COLUMNS = 64;
+    private static final int GRID_ROWS = 48;
+    // Accepted frames waiting to be emitted, at most, the oldest are forgotten first.
+    private static final int MAX_CANDIDATES = 16;
+
+    private static class Candidate {
+        final byte[] samples;
+        final long timestamp;
+
+        Candidate(byte[] samples, long timestamp) {
+            this.samples = samples;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final double mThreshold;
+    private final long mKeepAliveInterval;
+
+    private byte[] mReference = null;
+    private byte[] mSamples = null;
+    private long mLastEmittedTime = Long.MIN_VALUE;
+    private double mLastScore = -1;
+    private final TreeMap<Long, Candidate> mCandidates = new TreeMap<Long, Candidate>();
+
+    /**
+     * @param threshold         minimum motion score of an emitted frame, from 0 to 255.
+     * @param keepAliveInterval maximum time between two emitted frames, in milliseconds. Zero or negative values disable keep-alive frames.
+     */
+    public MotionDetector(double threshold, long keepAliveInterval) {
+        mThreshold = threshold;
+        mKeepAliveInterval = keepAliveInterval > 0 ? keepAliveInterval * NANOS_PER_MILLISECOND : 0;
+    }
+
+    public double getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * Returns true if the frame should be emitted. Only the luma plane, the first stride * height bytes, is read.
+     * <p>
+     * An accepted frame only becomes the reference once onEmitted is called for it, a frame that is
+     * then dropped must be reported to onDropped so that the keep-alive clock does not count it.
+     *
+     * @param stride    distance in bytes between two luma rows, such as 16 bytes aligned rows of YV12 frames.
+     * @param timestamp a monotonic timestamp in nanoseconds, such as System.nanoTime().
+     */
+    public synchronized boolean accept(long frameId, byte[] data, int width, int height, int stride, long timestamp) {
+        int columns = Math.min(GRID_COLUMNS, width);
+        int rows = Math.min(GRID_ROWS, height);
+        int count = columns * rows;
+
+        if (mReference != null && mReference.length != count) {
+            // Another preview size, nothing to compare with.
+            mReference = null;
+            mCandidates.clear();
+        }
+        if (mSamples == null || mSamples.length != count) {
+            mSamples = new byte[count];
+        }
+
+        long sum = 0;
+        int i = 0;
+        for (int row = 0; row < rows; row++) {
+            int offset = (row * height / rows) * stride;
+            for (int column = 0; column < columns; column++) {
+                byte sample = data[offset + column * width / columns];
+                mSamples[i] = sample;
+                if (mReference != null) {
+                    sum += Math.abs((sample & 0xff) - (mReference[i] & 0xff));
+                }
+                i++;
+            }
+        }
+
+        mLastScore = mReference != null ? sum / (double) count : -1;
+
+        // A frame on its way also resets the keep-alive clock, until it is dropped.
+        long lastTime = mCandidates.isEmpty() ? mLastEmittedTime : Math.max(mLastEmittedTime, mCandidates.lastEntry().getValue().timestamp);
+        boolean keepAlive = mKeepAliveInterval > 0 && timestamp - lastTime >= mKeepAliveInterval;
+        if (mReference != null && mLastScore < mThreshold && !keepAlive) {
+            return false;
+        }
+
+        mCandidates.put(frameId, new Candidate(mSamples, timestamp));
+        mSamples = null;
+        while (mCandidates.size() > MAX_CANDIDATES) {
+            mCandidates.pollFirstEntry();
+        }
+        return true;
+    }
+
+    /**
+     * Makes an accepted frame the reference, once it was actually emitted. Older accepted frames are forgotten.
+     */
+    public synchronized void onEmitted(long frameId) {
+        Candidate candidate = mCandidates.remove(frameId);
+        if (candidate == null) {
+            return;
+        }
+        mCandidates.headMap(frameId).clear();
+        if (mSamples == null) {
+            mSamples = mReference;
+        }
+        mReference = candidate.samples;
+        mLastEmittedTime = candidate.timestamp;
+    }
+
+    /**
+     * Forgets an accepted frame that will never be emitted.
+     */
+    public synchronized void onDropped(long frameId) {
+        mCandidates.remove(frameId);
+    }
+
+    /**
+     * Returns the motion score of the last frame, or -1 if there was no frame to compare it with.
+     */
+    public synchronized double getLastScore() {
+        return mLastScore;
+    }
+}
@@ -0,0 +1,252 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Frame pipeline counters and per-stage latency histograms.
+ * <p>
+ * Recording is lock-free so that it can run on every frame from any thread. Histograms use
+ * logarithmic buckets, eight per power of two, so percentiles are exact to within 12.5%.
+ */
+public class PipelineStats {
+    // YUV scaling, mirroring and rotation.
+    public static final int STAGE_TRANSFORM = 0;
+    // YUV to JPEG or RGBA conversion.
+    public static final int STAGE_ENCODE = 1;
+    // JPEG decoding, scaling and rotation of the bitmap route.
+    public static final int STAGE_DECODE = 2;
+    // Bitmap to JPEG compression of the bitmap route.
+    public static final int STAGE_REENCODE = 3;
+    public static final int STAGE_BASE64 = 4;
+    public static final int STAGE_FILE = 5;
+    // Hand-off of a result to the Cordova bridge.
+    public static final int STAGE_BRIDGE = 6;
+    // Whole frame, from the start of its conversion to the delivery of its last image.
+    public static final int STAGE_FRAME = 7;
+    // From the camera callback to the paint reported by the WebView.
+    public static final int STAGE_DISPLAY = 8;
+
+    public static final int COUNTER_RECEIVED = 0;
+    public static final int COUNTER_THROTTLED = 1;
+    public static final int COUNTER_DROPPED = 2;
+    public static final int COUNTER_ENCODED = 3;
+    public static final int COUNTER_DELIVERED = 4;
+    public static final int COUNTER_DRAWN = 5;
+    // Images discarded because a newer frame had already been delivered.
+    public static final int COUNTER_LATE = 6;
+    // Frames skipped because the scene had not changed.
+    public static final int COUNTER_STILL = 7;
+    // Frames whose conversion threw.
+    public static final int COUNTER_FAILED = 8;
+
+    // Frames the WebView received but did not draw : while busy drawing, replaced by a newer one, or failed to load.
+    public static final int SKIPPED_BUSY = 0;
+    public static final int SKIPPED_REPLACED = 1;
+    public static final int SKIPPED_FAILED = 2;
+
+    private static final String[] STAGE_NAMES = {"transform", "encode", "decode", "reencode", "base64", "file", "bridge", "frame", "display"};
+    private static final String[] COUNTER_NAMES = {"received", "throttled", "dropped", "encoded", "delivered", "drawn", "late", "still", "failed"};
+    private static final String[] SKIPPED_NAMES = {"busy", "replaced", "failed"};
+
+    private final Histogram[] mStages = new Histogram[STAGE_NAMES.length];
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_NAMES.length);
+    private final AtomicLongArray mSkipped = new AtomicLongArray(SKIPPED_NAMES.length);
+    private final Histogram mFrameBytes = new Histogram();
+    private final AtomicLong mDeliveredBytes = new AtomicLong(0);
+    private final AtomicLong mAllocatedBytes = new AtomicLong(0);
+    private final AtomicLong mStartTime = new AtomicLong(System.nanoTime());
+
+    public PipelineStats() {
+        for (int i = 0; i < mStages.length; i++) {
+            mStages[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Records the duration of a stage, in nanoseconds.
+     */
+    public void recordTime(int stage, long elapsed) {
+        mStages[stage].record(elapsed / 1000);
+    }
+
+    public void increment(int counter) {
+        mCounters.incrementAndGet(counter);
+    }
+
+    /**
+     * Records the size of a delivered image. Fullsize images also count as frame sizes.
+     */
+    public void recordDelivery(int bytes, boolean fullsize) {
+        mCounters.incrementAndGet(COUNTER_DELIVERED);
+        mDeliveredBytes.addAndGet(bytes);
+        if (fullsize) {
+            mFrameBytes.record(bytes);
+        }
+    }
+
+    /**
+     * Records a frame drawn by the WebView with its capture to paint latency, in nanoseconds.
+     */
+    public void recordDrawn(long latency) {
+        mCounters.incrementAndGet(COUNTER_DRAWN);
+        mStages[STAGE_DISPLAY].record(latency / 1000);
+    }
+
+    public void recordSkipped(int reason, int count) {
+        mSkipped.addAndGet(reason, count);
+    }
+
+    /**
+     * Records memory allocated by the pipeline for frame buffers, images and strings.
+     */
+    public void recordAllocation(long bytes) {
+        mAllocatedBytes.addAndGet(bytes);
+    }
+
+    public void reset() {
+        for (Histogram histogram : mStages) {
+            histogram.reset();
+        }
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            mCounters.set(i, 0);
+        }
+        for (int i = 0; i < SKIPPED_NAMES.length; i++) {
+            mSkipped.set(i, 0);
+        }
+        mFrameBytes.reset();
+        mDeliveredBytes.set(0);
+        mAllocatedBytes.set(0);
+        mStartTime.set(System.nanoTime());
+    }
+
+    /**
+     * Returns every counter and histogram. Durations are in milliseconds, sizes in bytes.
+     */
+    public JSONObject toJSON() throws JSONException {
+        double elapsed = (System.nanoTime() - mStartTime.get()) / 1000000000.0;
+
+        JSONObject counters = new JSONObject();
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            counters.put(COUNTER_NAMES[i], mCounters.get(i));
+        }
+        JSONObject skipped = new JSONObject();
+        for (int i = 0; i < SKIPPED_NAMES.length; i++) {
+            skipped.put(SKIPPED_NAMES[i], mSkipped.get(i));
+        }
+        counters.put("skipped", skipped);
+
+        JSONObject stages = new JSONObject();
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            stages.put(STAGE_NAMES[i], mStages[i].toJSON(1000.0));
+        }
+
+        JSONObject bytes = new JSONObject();
+        bytes.put("delivered", mDeliveredBytes.get());
+        bytes.put("frame", mFrameBytes.toJSON(1.0));
+
+        long allocatedBytes = mAllocatedBytes.get();
+        JSONObject allocation = new JSONObject();
+        allocation.put("bytes", allocatedBytes);
+        allocation.put("rate", elapsed > 0 ? allocatedBytes / elapsed : 0);
+
+        JSONObject json = new JSONObject();
+        json.put("duration", elapsed * 1000.0);
+        json.put("counters", counters);
+        json.put("stages", stages);
+        json.put("bytes", bytes);
+        json.put("allocation", allocation);
+        return json;
+    }
+
+    private static class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        // Values up to 2^40 : about twelve days in microseconds, a terabyte in bytes.
+        private static final int MAX_EXPONENT = 40;
+        private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong(0);
+        private final AtomicLong mSum = new AtomicLong(0);
+        private final AtomicLong mMax = new AtomicLong(0);
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            mBuckets.incrementAndGet(getBucket(value));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value)) {
+                max = mMax.get();
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+
+        JSONObject toJSON(double unit) throws JSONException {
+            long[] buckets = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = mBuckets.get(i);
+                count += buckets[i];
+            }
+            long max = mMax.get();
+
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("mean", count > 0 ? mSum.get() / (double) count / unit : 0);
+            json.put("p50", getPercentile(buckets, count, 0.50, max) / unit);
+            json.put("p95", getPercentile(buckets, count, 0.95, max) / unit);
+            json.put("p99", getPercentile(buckets, count, 0.99, max) / unit);
+            json.put("max", max / unit);
+            return json;
+        }
+
+        private static long getPercentile(long[] buckets, long count, double percentile, long max) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * count);
+            long cumulated = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulated += buckets[i];
+                if (cumulated >= rank) {
+                    return Math.min(getUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        private static int getBucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+            int shift = exponent - SUB_BUCKET_BITS;
+            int subBucket = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+            return Math.min((shift + 1) * SUB_BUCKETS + subBucket, BUCKETS - 1);
+        }
+
+        private static long getUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lower = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An additional named image of each frame, with its own size, format, quality, rate and transport.
+ * <p>
+ * Renditions are downsampled from the fullsize frame once it is scaled, rotated and cropped, so
+ * that their size is given in canvas coordinates. This class has no Android dependency.
+ */
+public class Rendition {
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_RGBA = "rgba";
+    public static final String FORMAT_LUMA = "luma";
+
+    private final String mName;
+    private final int mWidth;
+    private final int mHeight;
+    private final String mFormat;
+    private final int mQuality;
+    private final int mFpsDivisor;
+    private final String mTransport;
+    private final boolean mCrop;
+
+    private final AtomicLong mFrameCount = new AtomicLong(0);
+
+    /**
+     * @param width      maximum width in pixels. Zero or negative values keep the fullsize width.
+     * @param height     maximum height in pixels. Zero or negative values keep the fullsize height.
+     * @param format     FORMAT_JPEG, FORMAT_RGBA or FORMAT_LUMA. Other values select FORMAT_JPEG.
+     * @param quality    JPEG quality from 1 to 100. Zero or negative values use the quality of the fullsize image.
+     * @param fpsDivisor renders one frame out of fpsDivisor.
+     * @param transport  'data', 'binary' or 'file' for JPEG images. Raw images are always binary.
+     * @param crop       true to crop the center of the frame to the aspect ratio of width and height, instead of fitting it.
+     */
+    public Rendition(String name, int width, int height, String format, int quality, int fpsDivisor, String transport, boolean crop) {
+        mName = name;
+        mWidth = Math.max(0, width);
+        mHeight = Math.max(0, height);
+        mFormat = FORMAT_RGBA.equals(format) || FORMAT_LUMA.equals(format) ? format : FORMAT_JPEG;
+        mQuality = Math.min(100, Math.max(0, quality));
+        mFpsDivisor = Math.max(1, fpsDivisor);
+        mTransport = transport;
+        mCrop = crop;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public String getFormat() {
+        return mFormat;
+    }
+
+    public int getQuality() {
+        return mQuality;
+    }
+
+    public int getFpsDivisor() {
+        return mFpsDivisor;
+    }
+
+    public String getTransport() {
+        return mTransport;
+    }
+
+    public boolean isCrop() {
+        return mCrop;
+    }
+
+    /**
+     * Returns the use of the image : the format of raw images, the transport of JPEG images.
+     */
+    public String getUse() {
+        return FORMAT_JPEG.equals(mFormat) ? mTransport : mFormat;
+    }
+
+    /**
+     * Returns false for a luma image, which cannot be downsampled into the other formats.
+     */
+    public boolean hasChroma() {
+        return !FORMAT_LUMA.equals(mFormat);
+    }
+
+    /**
+     * Returns the number of pixels of the rendition of a frame of the given size, for ordering.
+     */
+    public long getArea(int frameWidth, int frameHeight) {
+        return (long) (mWidth > 0 ? mWidth : frameWidth) * (mHeight > 0 ? mHeight : frameHeight);
+    }
+
+    /**
+     * Returns true once every fpsDivisor frames.
+     */
+    public boolean accept() {
+        return mFrameCount.getAndIncrement() % mFpsDivisor == 0;
+    }
+}
@@ -0,0 +1,119 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Splits the conversion of a single frame into horizontal strips processed in parallel.
+ * <p>
+ * The calling thread converts the first strip while the other strips run on a fork-join pool,
+ * so that a frame is ready sooner instead of more frames being converted at once.
+ * This class has no Android dependency.
+ */
+public class StripConverter {
+
+    private interface Strip {
+        void run(int fromRow, int toRow);
+    }
+
+    private final ForkJoinPool mPool;
+
+    /**
+     * @param parallelism number of pool threads, usually the number of cores.
+     */
+    public StripConverter(int parallelism) {
+        mPool = new ForkJoinPool(Math.max(1, parallelism), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("CanvasCameraStrip-" + thread.getPoolIndex());
+                return thread;
+            }
+        }, null, false);
+    }
+
+    public int getParallelism() {
+        return mPool.getParallelism();
+    }
+
+    /**
+     * Transforms a frame (only its Y plane in luma mode) in the given number of strips.
+     */
+    public byte[] transform(final YuvTransformer transformer, final byte[] data, final boolean luma, int strips) {
+        transformer.prepare();
+        int outputSize = luma ? transformer.getOutputWidth() * transformer.getOutputHeight() : transformer.getOutputSize();
+        final byte[] output = new byte[outputSize];
+
+        run(transformer.getOutputHeight(), strips, new Strip() {
+            @Override
+            public void run(int fromRow, int toRow) {
+                if (luma) {
+                    transformer.transformLuma(data, output, fromRow, toRow);
+                } else {
+                    transformer.transform(data, output, fromRow, toRow);
+                }
+            }
+        });
+
+        return output;
+    }
+
+    /**
+     * Converts a NV21 image to packed RGBA in the given number of strips.
+     */
+    public byte[] toRgba(final byte[] nv21, final int width, final int height, int strips) {
+        final byte[] rgba = new byte[width * height * 4];
+
+        run(height, strips, new Strip() {
+            @Override
+            public void run(int fromRow, int toRow) {
+                YuvTransformer.toRgba(nv21, width, height, rgba, fromRow, toRow);
+            }
+        });
+
+        return rgba;
+    }
+
+    public void shutdown() {
+        mPool.shutdown();
+    }
+
+    private void run(int rows, int strips, final Strip strip) {
+        // Strips start on even rows, NV21 chroma rows are shared by two luma rows.
+        strips = Math.max(1, Math.min(strips, rows / 2));
+        if (strips == 1) {
+            strip.run(0, rows);
+            return;
+        }
+
+        int stripRows = ((rows + strips - 1) / strips + 1) & ~1;
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(strips - 1);
+        for (int fromRow = stripRows; fromRow < rows; fromRow += stripRows) {
+            final int from = fromRow;
+            final int to = Math.min(rows, fromRow + stripRows);
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    strip.run(from, to);
+                }
+            };
+            try {
+                tasks.add(mPool.submit(task));
+            } catch (RejectedExecutionException e) {
+                // Pool shut down, converts the strip on the calling thread.
+                task.run();
+            }
+        }
+
+        strip.run(0, Math.min(rows, stripRows));
+
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+}
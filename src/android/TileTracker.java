@@ -0,0 +1,153 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the tiles of a frame that changed since the frames already delivered.
+ * <p>
+ * Frames are split into a fixed grid of square tiles. A tile is dirty when enough of its luma
+ * samples differ from the reference, the luma plane as last delivered for that tile. Dirty tiles
+ * next to each other on a row are merged into a single rectangle. A keyframe is requested for the
+ * first frame, after a size change, at a fixed interval, and when most of the frame changed.
+ * <p>
+ * Each frame must be compared in capture order, so that every delta applies to the previous one.
+ * This class has no Android dependency.
+ */
+public class TileTracker {
+    public static final int TILE_SIZE = 64;
+
+    private static final long NANOS_PER_MILLISECOND = 1000000L;
+    // Luma samples are read every SAMPLE_STEP pixels in both directions.
+    private static final int SAMPLE_STEP = 2;
+    // A sample changed by more than this is a changed sample, below is sensor noise.
+    private static final int SAMPLE_THRESHOLD = 24;
+    // A tile with at least this many changed samples is dirty, about a 6x6 pixels object.
+    private static final int MIN_CHANGED_SAMPLES = 9;
+    // Above this fraction of dirty tiles, a keyframe is cheaper than the tiles.
+    private static final double MAX_DIRTY_RATIO = 0.5;
+
+    public static class Tile {
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+
+        Tile(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public static class Delta {
+        public final boolean keyframe;
+        // Changed rectangles of a delta frame, empty for a keyframe.
+        public final List<Tile> tiles;
+
+        Delta(boolean keyframe, List<Tile> tiles) {
+            this.keyframe = keyframe;
+            this.tiles = tiles;
+        }
+    }
+
+    private final long mKeyframeInterval;
+
+    private byte[] mReference = null;
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private long mLastKeyframeTime = 0;
+    private long mLastFrameId = 0;
+
+    /**
+     * @param keyframeInterval maximum time between two keyframes, in milliseconds. Zero or negative values only send keyframes when needed.
+     */
+    public TileTracker(long keyframeInterval) {
+        mKeyframeInterval = keyframeInterval > 0 ? keyframeInterval * NANOS_PER_MILLISECOND : 0;
+    }
+
+    /**
+     * Compares a frame to the reference and updates the reference with what will be delivered.
+     * Returns null for a frame older than the last compared one, which must not be delivered.
+     *
+     * @param data      NV21 or luma frame, only its first width * height bytes are read.
+     * @param timestamp a monotonic timestamp in nanoseconds, such as System.nanoTime().
+     */
+    public synchronized Delta update(long frameId, byte[] data, int width, int height, long timestamp) {
+        if (frameId <= mLastFrameId) {
+            return null;
+        }
+        mLastFrameId = frameId;
+
+        boolean keyframe = mReference == null || width != mWidth || height != mHeight
+                || (mKeyframeInterval > 0 && timestamp - mLastKeyframeTime >= mKeyframeInterval);
+
+        List<Tile> tiles = new ArrayList<Tile>();
+        if (!keyframe) {
+            int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            int dirtyCount = 0;
+
+            for (int row = 0; row < rows; row++) {
+                int y = row * TILE_SIZE;
+                int tileHeight = Math.min(TILE_SIZE, height - y);
+                int runStart = -1;
+                for (int column = 0; column <= columns; column++) {
+                    boolean dirty = column < columns && isDirty(data, width, column * TILE_SIZE, y, Math.min(TILE_SIZE, width - column * TILE_SIZE), tileHeight);
+                    if (dirty) {
+                        dirtyCount++;
+                        if (runStart < 0) {
+                            runStart = column;
+                        }
+                    } else if (runStart >= 0) {
+                        int x = runStart * TILE_SIZE;
+                        tiles.add(new Tile(x, y, Math.min(column * TILE_SIZE, width) - x, tileHeight));
+                        runStart = -1;
+                    }
+                }
+            }
+
+            keyframe = dirtyCount > columns * rows * MAX_DIRTY_RATIO;
+        }
+
+        if (keyframe) {
+            if (mReference == null || mReference.length != width * height) {
+                mReference = new byte[width * height];
+            }
+            System.arraycopy(data, 0, mReference, 0, width * height);
+            mWidth = width;
+            mHeight = height;
+            mLastKeyframeTime = timestamp;
+            return new Delta(true, new ArrayList<Tile>());
+        }
+
+        for (Tile tile : tiles) {
+            for (int y = tile.y; y < tile.y + tile.height; y++) {
+                System.arraycopy(data, y * width + tile.x, mReference, y * width + tile.x, tile.width);
+            }
+        }
+        return new Delta(false, tiles);
+    }
+
+    /**
+     * Forgets the reference, the next frame is a keyframe.
+     */
+    public synchronized void reset() {
+        mReference = null;
+    }
+
+    private boolean isDirty(byte[] data, int width, int x, int y, int tileWidth, int tileHeight) {
+        int changed = 0;
+        for (int row = y; row < y + tileHeight; row += SAMPLE_STEP) {
+            int offset = row * width;
+            for (int column = x; column < x + tileWidth; column += SAMPLE_STEP) {
+                if (Math.abs((data[offset + column] & 0xff) - (mReference[offset + column] & 0xff)) > SAMPLE_THRESHOLD
+                        && ++changed >= MIN_CHANGED_SAMPLES) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,580 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+/**
+ * Scales, crops, mirrors and rotates NV21 or YV12 preview frames into NV21 buffers.
+ * <p>
+ * This class has no Android dependency. Format constants share the values of
+ * android.graphics.ImageFormat so that the camera preview format can be passed as is.
+ * <p>
+ * Setters must not be called while a frame is being transformed. Once prepared,
+ * a transformer can be shared by several threads.
+ */
+public class YuvTransformer {
+    public static final int NV21 = 0x11;
+    public static final int YV12 = 0x32315659;
+
+    private final int mFormat;
+    private final int mWidth;
+    private final int mHeight;
+
+    private int mTargetWidth = 0;
+    private int mTargetHeight = 0;
+    private int mRotation = 0;
+    private boolean mMirror = false;
+    private boolean mCropToAspect = false;
+    private Region mRegion = null;
+
+    private int mCropLeft;
+    private int mCropTop;
+    private int mCropWidth;
+    private int mCropHeight;
+    private int mScaledWidth;
+    private int mScaledHeight;
+    private int mOutputWidth;
+    private int mOutputHeight;
+
+    private int mLumaStride;
+    private int mChromaStride;
+    private int mChromaStep;
+    private int mVOffset;
+    private int mUOffset;
+
+    private int[] mLumaRowOffsets;
+    private int[] mLumaColumnOffsets;
+    private int[] mChromaRowOffsets;
+    private int[] mChromaColumnOffsets;
+
+    private boolean mPrepared = false;
+
+    public YuvTransformer(int format, int width, int height) {
+        if (!isSupportedFormat(format)) {
+            throw new IllegalArgumentException("Unsupported preview format : " + format);
+        }
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("Invalid frame size : " + width + "x" + height);
+        }
+        mFormat = format;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    public static boolean isSupportedFormat(int format) {
+        return format == NV21 || format == YV12;
+    }
+
+    /**
+     * Returns the size of a frame buffer for the given format and dimensions.
+     */
+    public static int getBufferSize(int format, int width, int height) {
+        if (format == YV12) {
+            int lumaStride = align16(width);
+            int chromaStride = align16(lumaStride / 2);
+            return lumaStride * height + chromaStride * (height / 2) * 2;
+        } else {
+            return width * height + (width * height) / 2;
+        }
+    }
+
+    /**
+     * Returns the size of the Y plane of a frame buffer for the given format and dimensions.
+     */
+    public static int getLumaSize(int format, int width, int height) {
+        return getLumaStride(format, width) * height;
+    }
+
+    /**
+     * Returns the distance in bytes between two rows of the Y plane for the given format and width.
+     */
+    public static int getLumaStride(int format, int width) {
+        return format == YV12 ? align16(width) : width;
+    }
+
+    public static int[] calculateAspectRatio(int origWidth, int origHeight, int targetWidth, int targetHeight) {
+        int newWidth = targetWidth;
+        int newHeight = targetHeight;
+
+        // If no new width or height were specified return the original bitmap
+        if (newWidth <= 0 && newHeight <= 0) {
+            newWidth = origWidth;
+            newHeight = origHeight;
+        }
+        // Only the width was specified
+        else if (newWidth > 0 && newHeight <= 0) {
+            newHeight = (int) (newWidth / (double) origWidth * origHeight);
+        }
+        // only the height was specified
+        else if (newWidth <= 0 && newHeight > 0) {
+            newWidth = (int) (newHeight / (double) origHeight * origWidth);
+        }
+        // If the user specified both a positive width and height
+        // (potentially different aspect ratio) then the width or height is
+        // scaled so that the image fits while maintaining aspect ratio.
+        // Alternatively, the specified width and height could have been
+        // kept and Bitmap.SCALE_TO_FIT specified when scaling, but this
+        // would result in whitespace in the new image.
+        else {
+            double newRatio = newWidth / (double) newHeight;
+            double origRatio = origWidth / (double) origHeight;
+
+            if (origRatio > newRatio) {
+                newHeight = (newWidth * origHeight) / origWidth;
+            } else if (origRatio < newRatio) {
+                newWidth = (newHeight * origWidth) / origHeight;
+            }
+        }
+
+        int[] widthHeight = new int[2];
+        widthHeight[0] = newWidth;
+        widthHeight[1] = newHeight;
+
+        return widthHeight;
+    }
+
+    /**
+     * Sets the size of the frame before rotation. Zero or negative values keep the source size.
+     */
+    public void setTargetSize(int targetWidth, int targetHeight) {
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+        mPrepared = false;
+    }
+
+    /**
+     * Sets the clockwise rotation in degrees : 0, 90, 180 or 270.
+     */
+    public void setRotation(int rotation) {
+        rotation = ((rotation % 360) + 360) % 360;
+        if (rotation % 90 != 0) {
+            throw new IllegalArgumentException("Unsupported rotation : " + rotation);
+        }
+        mRotation = rotation;
+        mPrepared = false;
+    }
+
+    /**
+     * Mirrors the frame horizontally before it is rotated.
+     */
+    public void setMirror(boolean mirror) {
+        mMirror = mirror;
+        mPrepared = false;
+    }
+
+    /**
+     * When both target dimensions are set, crops the center of the frame to the target aspect ratio
+     * instead of fitting the whole frame inside the target size.
+     */
+    public void setCropToAspect(boolean cropToAspect) {
+        mCropToAspect = cropToAspect;
+        mPrepared = false;
+    }
+
+    /**
+     * Keeps only a region of the frame, given in output coordinates : after mirroring and rotation.
+     * The region keeps the scale it has when the whole frame is fitted in the target size, so that
+     * the output size scales with the region area. Null keeps the whole frame.
+     */
+    public void setRegion(Region region) {
+        mRegion = region != null && !region.isFull() ? region : null;
+        mPrepared = false;
+    }
+
+    public Region getRegion() {
+        return mRegion;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getTargetWidth() {
+        return mTargetWidth;
+    }
+
+    public int getTargetHeight() {
+        return mTargetHeight;
+    }
+
+    public int getRotation() {
+        return mRotation;
+    }
+
+    public boolean isMirror() {
+        return mMirror;
+    }
+
+    public boolean isCropToAspect() {
+        return mCropToAspect;
+    }
+
+    public int getOutputWidth() {
+        prepare();
+        return mOutputWidth;
+    }
+
+    public int getOutputHeight() {
+        prepare();
+        return mOutputHeight;
+    }
+
+    public int getOutputSize() {
+        prepare();
+        return mOutputWidth * mOutputHeight + (mOutputWidth * mOutputHeight) / 2;
+    }
+
+    public synchronized void prepare() {
+        if (mPrepared) {
+            return;
+        }
+
+        int[] crop = getCropRect(mRegion, mWidth, mHeight, mRotation, mMirror);
+        mCropLeft = crop[0];
+        mCropTop = crop[1];
+        mCropWidth = crop[2];
+        mCropHeight = crop[3];
+
+        // The target size applies to the whole frame, a region keeps its share of it.
+        int targetWidth = mTargetWidth > 0 ? Math.max(2, (int) Math.round(mTargetWidth * mCropWidth / (double) mWidth)) : mTargetWidth;
+        int targetHeight = mTargetHeight > 0 ? Math.max(2, (int) Math.round(mTargetHeight * mCropHeight / (double) mHeight)) : mTargetHeight;
+
+        int[] widthHeight;
+        if (mCropToAspect && targetWidth > 0 && targetHeight > 0) {
+            double targetRatio = targetWidth / (double) targetHeight;
+            if (mCropWidth / (double) mCropHeight > targetRatio) {
+                int cropWidth = Math.min(mCropWidth, Math.max(2, (int) Math.round(mCropHeight * targetRatio) & ~1));
+                mCropLeft += ((mCropWidth - cropWidth) / 2) & ~1;
+                mCropWidth = cropWidth;
+            } else {
+                int cropHeight = Math.min(mCropHeight, Math.max(2, (int) Math.round(mCropWidth / targetRatio) & ~1));
+                mCropTop += ((mCropHeight - cropHeight) / 2) & ~1;
+                mCropHeight = cropHeight;
+            }
+            widthHeight = new int[]{targetWidth, targetHeight};
+        } else {
+            widthHeight = calculateAspectRatio(mCropWidth, mCropHeight, targetWidth, targetHeight);
+        }
+
+        // NV21 chroma is subsampled 2x2, output dimensions must be even
+        mScaledWidth = Math.max(2, widthHeight[0] & ~1);
+        mScaledHeight = Math.max(2, widthHeight[1] & ~1);
+
+        boolean swap = (mRotation == 90 || mRotation == 270);
+        mOutputWidth = swap ? mScaledHeight : mScaledWidth;
+        mOutputHeight = swap ? mScaledWidth : mScaledHeight;
+
+        if (mFormat == YV12) {
+            // YV12 planes are 16 bytes aligned, V plane comes first
+            mLumaStride = align16(mWidth);
+            mChromaStride = align16(mLumaStride / 2);
+            mChromaStep = 1;
+            mVOffset = mLumaStride * mHeight;
+            mUOffset = mVOffset + mChromaStride * (mHeight / 2);
+        } else {
+            // NV21 has an interleaved VU plane right after the Y plane
+            mLumaStride = mWidth;
+            mChromaStride = mWidth;
+            mChromaStep = 2;
+            mVOffset = mWidth * mHeight;
+            mUOffset = mVOffset + 1;
+        }
+
+        mLumaRowOffsets = new int[mOutputHeight];
+        mLumaColumnOffsets = new int[mOutputWidth];
+        getOffsets(mCropLeft, mCropTop, mCropWidth, mCropHeight, mScaledWidth, mScaledHeight,
+                mLumaStride, 1, mLumaRowOffsets, mLumaColumnOffsets);
+
+        mChromaRowOffsets = new int[mOutputHeight / 2];
+        mChromaColumnOffsets = new int[mOutputWidth / 2];
+        getOffsets(mCropLeft / 2, mCropTop / 2, mCropWidth / 2, mCropHeight / 2, mScaledWidth / 2, mScaledHeight / 2,
+                mChromaStride, mChromaStep, mChromaRowOffsets, mChromaColumnOffsets);
+
+        mPrepared = true;
+    }
+
+    public byte[] transform(byte[] data) {
+        return transform(data, null);
+    }
+
+    /**
+     * Transforms a whole frame. The output buffer is allocated when null or too small.
+     */
+    public byte[] transform(byte[] data, byte[] output) {
+        prepare();
+        if (output == null || output.length < getOutputSize()) {
+            output = new byte[getOutputSize()];
+        }
+        transform(data, output, 0, mOutputHeight);
+        return output;
+    }
+
+    /**
+     * Transforms output rows [fromRow, toRow[ of a frame. Rows must be even so that
+     * several threads can work on distinct strips of the same output buffer.
+     */
+    public void transform(byte[] data, byte[] output, int fromRow, int toRow) {
+        transformLuma(data, output, fromRow, toRow);
+        transformChroma(data, output, fromRow, toRow);
+    }
+
+    /**
+     * Transforms the Y plane only, into the first getOutputWidth() * getOutputHeight() bytes of the output.
+     */
+    public byte[] transformLuma(byte[] data, byte[] output) {
+        prepare();
+        if (output == null || output.length < mOutputWidth * mOutputHeight) {
+            output = new byte[mOutputWidth * mOutputHeight];
+        }
+        transformLuma(data, output, 0, mOutputHeight);
+        return output;
+    }
+
+    public void transformLuma(byte[] data, byte[] output, int fromRow, int toRow) {
+        prepare();
+        // The Y plane alone is enough, so that an already transformed luma frame can be scaled again.
+        checkBufferSize(data, getLumaSize(mFormat, mWidth, mHeight));
+
+        fromRow = Math.max(0, fromRow) & ~1;
+        toRow = Math.min(mOutputHeight, toRow + (toRow & 1));
+
+        int[] rowOffsets = mLumaRowOffsets;
+        int[] columnOffsets = mLumaColumnOffsets;
+        int columns = mOutputWidth;
+
+        int index = fromRow * columns;
+        for (int y = fromRow; y < toRow; y++) {
+            int rowOffset = rowOffsets[y];
+            for (int x = 0; x < columns; x++) {
+                output[index++] = data[rowOffset + columnOffsets[x]];
+            }
+        }
+    }
+
+    private void transformChroma(byte[] data, byte[] output, int fromRow, int toRow) {
+        prepare();
+        checkBufferSize(data, getBufferSize(mFormat, mWidth, mHeight));
+
+        fromRow = Math.max(0, fromRow) & ~1;
+        toRow = Math.min(mOutputHeight, toRow + (toRow & 1));
+
+        int[] rowOffsets = mChromaRowOffsets;
+        int[] columnOffsets = mChromaColumnOffsets;
+        int columns = mOutputWidth / 2;
+
+        int vOffset = mVOffset;
+        int uOffset = mUOffset;
+
+        int index = mOutputWidth * mOutputHeight + (fromRow / 2) * mOutputWidth;
+        for (int y = fromRow / 2; y < toRow / 2; y++) {
+            int rowOffset = rowOffsets[y];
+            for (int x = 0; x < columns; x++) {
+                int offset = rowOffset + columnOffsets[x];
+                output[index++] = data[vOffset + offset];
+                output[index++] = data[uOffset + offset];
+            }
+        }
+    }
+
+    /**
+     * Converts rows [fromRow, toRow[ of a NV21 image to packed RGBA (4 bytes per pixel, opaque).
+     * Uses the full range BT.601 coefficients of JFIF, like android.graphics.YuvImage.
+     */
+    public static void toRgba(byte[] nv21, int width, int height, byte[] rgba, int fromRow, int toRow) {
+        int lumaSize = width * height;
+
+        fromRow = Math.max(0, fromRow);
+        toRow = Math.min(height, toRow);
+
+        int index = fromRow * width * 4;
+        for (int y = fromRow; y < toRow; y++) {
+            int lumaOffset = y * width;
+            int chromaOffset = lumaSize + (y >> 1) * width;
+            for (int x = 0; x < width; x++) {
+                int luma = (nv21[lumaOffset + x] & 0xff) << 10;
+                int chroma = chromaOffset + (x & ~1);
+                int v = (nv21[chroma] & 0xff) - 128;
+                int u = (nv21[chroma + 1] & 0xff) - 128;
+
+                rgba[index++] = clamp((luma + 1436 * v) >> 10);
+                rgba[index++] = clamp((luma - 352 * u - 731 * v) >> 10);
+                rgba[index++] = clamp((luma + 1815 * u) >> 10);
+                rgba[index++] = (byte) 0xff;
+            }
+        }
+    }
+
+    public static byte[] toRgba(byte[] nv21, int width, int height, byte[] rgba) {
+        if (rgba == null || rgba.length < width * height * 4) {
+            rgba = new byte[width * height * 4];
+        }
+        toRgba(nv21, width, height, rgba, 0, height);
+        return rgba;
+    }
+
+    private static byte clamp(int value) {
+        return (byte) (value < 0 ? 0 : (value > 255 ? 255 : value));
+    }
+
+    private void checkBufferSize(byte[] data, int size) {
+        if (data.length < size) {
+            throw new IllegalArgumentException("Frame buffer is too small : " + data.length);
+        }
+    }
+
+    /**
+     * Fills the source offsets so that the sample for output pixel (x, y) is found at rowOffsets[y] + columnOffsets[x].
+     * Mirroring is applied before the clockwise rotation, like android.graphics.Matrix preScale then postRotate.
+     */
+    private void getOffsets(int left, int top, int width, int height, int scaledWidth, int scaledHeight, int stride, int step, int[] rowOffsets, int[] columnOffsets) {
+        int[] sourceColumns = new int[scaledWidth];
+        int[] sourceRows = new int[scaledHeight];
+
+        for (int x = 0; x < scaledWidth; x++) {
+            int column = mMirror ? scaledWidth - 1 - x : x;
+            sourceColumns[x] = (left + Math.min(width - 1, (int) (((2L * column + 1) * width) / (2L * scaledWidth)))) * step;
+        }
+        for (int y = 0; y < scaledHeight; y++) {
+            sourceRows[y] = (top + Math.min(height - 1, (int) (((2L * y + 1) * height) / (2L * scaledHeight)))) * stride;
+        }
+
+        switch (mRotation) {
+            case 90:
+                for (int y = 0; y < rowOffsets.length; y++) {
+                    rowOffsets[y] = sourceColumns[y];
+                }
+                for (int x = 0; x < columnOffsets.length; x++) {
+                    columnOffsets[x] = sourceRows[scaledHeight - 1 - x];
+                }
+                break;
+            case 180:
+                for (int y = 0; y < rowOffsets.length; y++) {
+                    rowOffsets[y] = sourceRows[scaledHeight - 1 - y];
+                }
+                for (int x = 0; x < columnOffsets.length; x++) {
+                    columnOffsets[x] = sourceColumns[scaledWidth - 1 - x];
+                }
+                break;
+            case 270:
+                for (int y = 0; y < rowOffsets.length; y++) {
+                    rowOffsets[y] = sourceColumns[scaledWidth - 1 - y];
+                }
+                for (int x = 0; x < columnOffsets.length; x++) {
+                    columnOffsets[x] = sourceRows[x];
+                }
+                break;
+            default:
+                for (int y = 0; y < rowOffsets.length; y++) {
+                    rowOffsets[y] = sourceRows[y];
+                }
+                for (int x = 0; x < columnOffsets.length; x++) {
+                    columnOffsets[x] = sourceColumns[x];
+                }
+                break;
+        }
+    }
+
+    /**
+     * Returns the source rectangle {left, top, width, height} of a region given in output coordinates,
+     * undoing the clockwise rotation then the mirroring. Edges are even, NV21 chroma is subsampled 2x2.
+     */
+    public static int[] getCropRect(Region region, int width, int height, int rotation, boolean mirror) {
+        if (region == null || region.isFull()) {
+            return new int[]{0, 0, width, height};
+        }
+
+        double left;
+        double top;
+        double regionWidth;
+        double regionHeight;
+        switch (((rotation % 360) + 360) % 360) {
+            case 90:
+                left = region.top;
+                top = 1 - region.left - region.width;
+                regionWidth = region.height;
+                regionHeight = region.width;
+                break;
+            case 180:
+                left = 1 - region.left - region.width;
+                top = 1 - region.top - region.height;
+                regionWidth = region.width;
+                regionHeight = region.height;
+                break;
+            case 270:
+                left = 1 - region.top - region.height;
+                top = region.left;
+                regionWidth = region.height;
+                regionHeight = region.width;
+                break;
+            default:
+                left = region.left;
+                top = region.top;
+                regionWidth = region.width;
+                regionHeight = region.height;
+                break;
+        }
+        if (mirror) {
+            left = 1 - left - regionWidth;
+        }
+
+        int cropLeft = Math.min(width - 2, (int) Math.round(left * width) & ~1);
+        int cropTop = Math.min(height - 2, (int) Math.round(top * height) & ~1);
+        int cropRight = Math.max(cropLeft + 2, Math.min(width, (int) Math.round((left + regionWidth) * width) & ~1));
+        int cropBottom = Math.max(cropTop + 2, Math.min(height, (int) Math.round((top + regionHeight) * height) & ~1));
+        return new int[]{cropLeft, cropTop, cropRight - cropLeft, cropBottom - cropTop};
+    }
+
+    /**
+     * Normalized rectangle of a frame, from 0 to 1 on both axes.
+     */
+    public static final class Region {
+        public final double left;
+        public final double top;
+        public final double width;
+        public final double height;
+
+        /**
+         * Values are clamped to the frame.
+         */
+        public Region(double left, double top, double width, double height) {
+            this.left = clamp(left, 0, 1);
+            this.top = clamp(top, 0, 1);
+            this.width = clamp(width, 0, 1 - this.left);
+            this.height = clamp(height, 0, 1 - this.top);
+        }
+
+        public boolean isFull() {
+            return left <= 0 && top <= 0 && width >= 1 && height >= 1;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Region)) {
+                return false;
+            }
+            Region region = (Region) object;
+            return left == region.left && top == region.top && width == region.width && height == region.height;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(left) * 31 + Double.doubleToLongBits(top);
+            bits = bits * 31 + Double.doubleToLongBits(width);
+            bits = bits * 31 + Double.doubleToLongBits(height);
+            return (int) (bits ^ (bits >>> 32));
+        }
+
+        private static double clamp(double value, double min, double max) {
+            return Double.isNaN(value) ? min : Math.max(min, Math.min(max, value));
+        }
+    }
+
+    private static int align16(int value) {
+        return (value + 15) & ~15;
+    }
+}
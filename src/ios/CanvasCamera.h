@@ -28,6 +28,7 @@ static NSString *const CCFlashModeKey        = @"flashMode";
 static NSString *const CCHasThumbnailKey     = @"hasThumbnail";
 static NSString *const CCThumbnailRatioKey   = @"thumbnailRatio";
 static NSString *const CCLensOrientationKey  = @"cameraFacing";
+static NSString *const CCQualityKey          = @"quality";
 
 #pragma mark - CanvasCamera Public Interface
 
@@ -45,6 +46,7 @@ static NSString *const CCLensOrientationKey  = @"cameraFacing";
 
 @property (readwrite, assign) BOOL hasThumbnail;
 @property (readwrite, assign) CGFloat thumbnailRatio;
+@property (readwrite, assign) NSInteger quality;
 
 @property (readwrite, assign) AVCaptureDevicePosition devicePosition;
 
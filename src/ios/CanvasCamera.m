@@ -390,6 +390,7 @@ static BOOL const LOGGING                    = NO;
     self.captureHeight = 288;
     self.hasThumbnail = false;
     self.thumbnailRatio = 1 / 6;
+    self.quality = 100;
     self.flashMode = AVCaptureFlashModeOff;
     self.devicePosition = AVCaptureDevicePositionBack;
     [self initDefaultOptions];
@@ -553,6 +554,7 @@ static BOOL const LOGGING                    = NO;
                               @"cameraFacing" : [self devicePositionToString:self.devicePosition],
                               @"hasThumbnail" : @(self.hasThumbnail),
                               @"thumbnailRatio" : @(self.thumbnailRatio),
+                              @"quality" : @(self.quality),
                               @"canvas" : canvas,
                               @"capture" : capture
                               };
@@ -599,6 +601,13 @@ static BOOL const LOGGING                    = NO;
         if (LOGGING) NSLog(@"[DEBUG][CanvasCamera][parseOptions] Fps : %ld", (long)self.fps);
     }
     
+    // quality
+    valueAsString = options[CCQualityKey];
+    if (valueAsString) {
+        self.quality = MAX(1, MIN(100, valueAsString.integerValue));
+        if (LOGGING) NSLog(@"[DEBUG][CanvasCamera][parseOptions] Quality : %ld", (long)self.quality);
+    }
+    
     // width
     valueAsString = options[CCWidthKey];
     if (valueAsString) {
@@ -732,12 +741,12 @@ static BOOL const LOGGING                    = NO;
             uiImage = [self resizedUIImage:uiImage toSize:CGSizeMake(self.canvasWidth, self.canvasHeight) rotated:rotated];
             
             // Convert the ui image to JPEG NSData
-            NSData *fullsizeData = UIImageJPEGRepresentation(uiImage, 1.0);
+            NSData *fullsizeData = UIImageJPEGRepresentation(uiImage, self.quality / 100.0);
             
             // Same operation for the image thumbnail version
             NSData *thumbnailData = nil;
             if (self.hasThumbnail) {
-                thumbnailData = UIImageJPEGRepresentation([self resizedUIImage:uiImage ratio:self.thumbnailRatio], 1.0);
+                thumbnailData = UIImageJPEGRepresentation([self resizedUIImage:uiImage ratio:self.thumbnailRatio], self.quality / 100.0);
             }
             
             // Allocating output NSDictionnary
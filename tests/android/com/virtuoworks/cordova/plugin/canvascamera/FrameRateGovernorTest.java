@@ -0,0 +1,93 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameRateGovernorTest {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLISECOND = 1000000L;
+
+    @Test
+    public void keepsEveryOtherFrame() {
+        FrameRateGovernor governor = new FrameRateGovernor(15);
+        List<Long> accepted = feed(governor, 30, 0, 10 * NANOS_PER_SECOND, 0);
+
+        assertEquals(150, accepted.size());
+        assertEquals(150, governor.getThrottledCount());
+    }
+
+    @Test
+    public void meetsFractionalRates() {
+        FrameRateGovernor governor = new FrameRateGovernor(12.5);
+        List<Long> accepted = feed(governor, 30, 0, 10 * NANOS_PER_SECOND, 0);
+
+        // 12.5 fps over 10 seconds, however 30 fps frames fall on the deadlines.
+        assertTrue(accepted.size() + " frames", Math.abs(accepted.size() - 125) <= 1);
+    }
+
+    @Test
+    public void meetsFractionalRatesWithJitter() {
+        FrameRateGovernor governor = new FrameRateGovernor(12.5);
+        List<Long> accepted = feed(governor, 30, 0, 10 * NANOS_PER_SECOND, 3 * NANOS_PER_MILLISECOND);
+
+        assertTrue(accepted.size() + " frames", Math.abs(accepted.size() - 125) <= 2);
+    }
+
+    @Test
+    public void keepsEveryFrameAtSourceRate() {
+        FrameRateGovernor governor = new FrameRateGovernor(30);
+        List<Long> accepted = feed(governor, 30, 0, 10 * NANOS_PER_SECOND, 3 * NANOS_PER_MILLISECOND);
+
+        assertEquals(300, accepted.size());
+        assertEquals(0, governor.getThrottledCount());
+    }
+
+    @Test
+    public void doesNotCatchUpAfterStall() {
+        FrameRateGovernor governor = new FrameRateGovernor(15);
+        List<Long> accepted = feed(governor, 30, 0, NANOS_PER_SECOND, 0);
+        // No frame for a second, then the camera resumes.
+        accepted.addAll(feed(governor, 30, 2 * NANOS_PER_SECOND, 3 * NANOS_PER_SECOND, 0));
+
+        assertEquals(30, accepted.size());
+        long interval = NANOS_PER_SECOND / 15;
+        for (int i = 1; i < accepted.size(); i++) {
+            long gap = accepted.get(i) - accepted.get(i - 1);
+            assertTrue("Burst of frames " + gap + " ns apart", gap >= interval * 3 / 4);
+        }
+    }
+
+    @Test
+    public void disablesThrottling() {
+        FrameRateGovernor governor = new FrameRateGovernor(0);
+        assertEquals(300, feed(governor, 30, 0, 10 * NANOS_PER_SECOND, 0).size());
+    }
+
+    /**
+     * Feeds frames of a camera at the given rate from start to end, with random jitter of at most the given amount.
+     * Returns the timestamps of the accepted frames.
+     */
+    private static List<Long> feed(FrameRateGovernor governor, double sourceFps, long start, long end, long jitter) {
+        Random random = new Random(42);
+        List<Long> accepted = new ArrayList<Long>();
+        for (int i = 0; ; i++) {
+            long timestamp = start + Math.round(i * NANOS_PER_SECOND / sourceFps);
+            if (timestamp >= end) {
+                break;
+            }
+            if (jitter > 0) {
+                timestamp += (long) ((random.nextDouble() * 2 - 1) * jitter);
+            }
+            if (governor.accept(timestamp)) {
+                accepted.add(timestamp);
+            }
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,154 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameSchedulerTest {
+
+    @Test
+    public void keepsNewestPendingFrame() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> dropped = Collections.synchronizedList(new ArrayList<Integer>());
+
+        FrameScheduler<Integer> scheduler = new FrameScheduler<Integer>(1, new FrameScheduler.FrameHandler<Integer>() {
+            @Override
+            public void onFrame(Integer frame) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                processed.add(frame);
+                done.countDown();
+            }
+
+            @Override
+            public void onFrameDropped(Integer frame) {
+                dropped.add(frame);
+            }
+
+            @Override
+            public void onFrameFailed(Integer frame, RuntimeException e) {
+            }
+        });
+
+        // The only worker is busy with frame 1, each newer frame replaces the pending one.
+        scheduler.submit(1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int frame = 2; frame <= 5; frame++) {
+            scheduler.submit(frame);
+        }
+        assertEquals(Arrays.asList(2, 3, 4), dropped);
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // Counted once the handler returns.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getFramesInFlight() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        scheduler.shutdown();
+
+        assertEquals(Arrays.asList(1, 5), processed);
+        assertEquals(5, scheduler.getReceivedCount());
+        assertEquals(2, scheduler.getProcessedCount());
+        assertEquals(3, scheduler.getDroppedCount());
+    }
+
+    @Test
+    public void dropsPendingFrameOnClear() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> dropped = Collections.synchronizedList(new ArrayList<Integer>());
+
+        FrameScheduler<Integer> scheduler = new FrameScheduler<Integer>(1, new FrameScheduler.FrameHandler<Integer>() {
+            @Override
+            public void onFrame(Integer frame) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onFrameDropped(Integer frame) {
+                dropped.add(frame);
+            }
+
+            @Override
+            public void onFrameFailed(Integer frame, RuntimeException e) {
+            }
+        });
+
+        scheduler.submit(1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.submit(2);
+        scheduler.clear();
+        assertEquals(Collections.singletonList(2), dropped);
+
+        release.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void reportsFailedFrames() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(3);
+        final List<Integer> failed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        FrameScheduler<Integer> scheduler = new FrameScheduler<Integer>(1, new FrameScheduler.FrameHandler<Integer>() {
+            @Override
+            public void onFrame(Integer frame) {
+                try {
+                    if (frame == 2) {
+                        throw new IllegalStateException("Frame " + frame);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onFrameDropped(Integer frame) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFrameFailed(Integer frame, RuntimeException e) {
+                assertEquals("Frame " + frame, e.getMessage());
+                failed.add(frame);
+            }
+        });
+
+        // One frame at a time, so that none is dropped.
+        for (int frame = 1; frame <= 3; frame++) {
+            long processed = scheduler.getProcessedCount() + scheduler.getFailedCount();
+            scheduler.submit(frame);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getProcessedCount() + scheduler.getFailedCount() == processed && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+
+        assertEquals(Collections.singletonList(2), failed);
+        assertEquals(2, scheduler.getProcessedCount());
+        assertEquals(1, scheduler.getFailedCount());
+        assertEquals(0, scheduler.getDroppedCount());
+    }
+}
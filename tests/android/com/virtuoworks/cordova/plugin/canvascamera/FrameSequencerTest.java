@@ -0,0 +1,83 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameSequencerTest {
+    private final List<String> mDelivered = new ArrayList<String>();
+    private final List<String> mDiscarded = new ArrayList<String>();
+
+    private FrameSequencer<String> mSequencer;
+
+    @Before
+    public void setUp() {
+        mSequencer = new FrameSequencer<String>(new FrameSequencer.Delivery<String>() {
+            @Override
+            public void onDeliver(long frameId, String result) {
+                mDelivered.add(result);
+            }
+
+            @Override
+            public void onDiscard(long frameId, String result) {
+                mDiscarded.add(result);
+            }
+        });
+    }
+
+    @Test
+    public void deliversInCaptureOrder() {
+        mSequencer.begin(1);
+        mSequencer.begin(2);
+        mSequencer.begin(3);
+
+        mSequencer.submit(3, "3");
+        mSequencer.end(3);
+        mSequencer.submit(2, "2");
+        mSequencer.end(2);
+        assertEquals(Arrays.<String>asList(), mDelivered);
+
+        mSequencer.submit(1, "1");
+        mSequencer.end(1);
+        assertEquals(Arrays.asList("1", "2", "3"), mDelivered);
+        assertEquals(2, mSequencer.getHeldCount());
+    }
+
+    @Test
+    public void discardsUnregisteredFrames() {
+        mSequencer.begin(2);
+        mSequencer.submit(1, "1");
+        mSequencer.submit(2, "2");
+
+        assertEquals(Arrays.asList("2"), mDelivered);
+        assertEquals(Arrays.asList("1"), mDiscarded);
+    }
+
+    @Test
+    public void clearDropsWithoutDiscarding() {
+        mSequencer.begin(1);
+        mSequencer.begin(2);
+        mSequencer.begin(3);
+        mSequencer.submit(2, "2");
+
+        mSequencer.clear();
+        // Frames still being processed when cleared.
+        mSequencer.submit(1, "1");
+        mSequencer.end(1);
+        mSequencer.submit(3, "3");
+        mSequencer.end(3);
+
+        assertEquals(Arrays.<String>asList(), mDelivered);
+        assertEquals(Arrays.<String>asList(), mDiscarded);
+
+        mSequencer.begin(4);
+        mSequencer.submit(4, "4");
+        mSequencer.end(4);
+        assertEquals(Arrays.asList("4"), mDelivered);
+    }
+}
@@ -0,0 +1,211 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.net.SocketException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MjpegServerTest {
+    private static final String TOKEN = "0123456789abcdef";
+    private static final int TIMEOUT = 5000;
+
+    private MjpegServer mServer;
+    private int mPort;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MjpegServer(TOKEN, "fullsize", "thumbnail");
+        mPort = mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void returnsStreamUrl() {
+        assertEquals("http://127.0.0.1:" + mPort + "/fullsize?token=" + TOKEN, mServer.getUrl("fullsize"));
+        assertNull(mServer.getUrl("unknown"));
+    }
+
+    @Test
+    public void rejectsBadToken() throws IOException {
+        assertEquals("HTTP/1.1 403 Forbidden", requestStatus("GET /fullsize?token=bad HTTP/1.1"));
+        assertEquals("HTTP/1.1 403 Forbidden", requestStatus("GET /fullsize HTTP/1.1"));
+    }
+
+    @Test
+    public void rejectsUnknownStream() throws IOException {
+        assertEquals("HTTP/1.1 404 Not Found", requestStatus("GET /unknown?token=" + TOKEN + " HTTP/1.1"));
+    }
+
+    @Test
+    public void rejectsBadRequest() throws IOException {
+        assertEquals("HTTP/1.1 400 Bad Request", requestStatus("POST /fullsize?token=" + TOKEN + " HTTP/1.1"));
+    }
+
+    @Test
+    public void sendsFramesInOrder() throws IOException {
+        Socket socket = connect("fullsize");
+        try {
+            InputStream in = socket.getInputStream();
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            assertTrue(readHeaders(in).contains("Content-Type: multipart/x-mixed-replace; boundary=canvascamera"));
+
+            // Each frame is published once the previous one is received, none can be skipped.
+            for (int i = 1; i <= 5; i++) {
+                mServer.publish("fullsize", newImage(i));
+                assertArrayEquals(newImage(i), readPart(in));
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void skipsFramesButKeepsOrder() throws IOException {
+        Socket socket = connect("thumbnail");
+        try {
+            InputStream in = socket.getInputStream();
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            readHeaders(in);
+
+            for (int i = 1; i <= 100; i++) {
+                mServer.publish("thumbnail", newImage(i));
+            }
+            // Only the newest images are sent, in publishing order.
+            int last = 0;
+            while (last < 100) {
+                int index = readPart(in)[0] & 0xff;
+                assertTrue(index + " after " + last, index > last);
+                last = index;
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void stopClosesConnections() throws IOException, InterruptedException {
+        Socket socket = connect("fullsize");
+        try {
+            InputStream in = socket.getInputStream();
+            assertEquals("HTTP/1.1 200 OK", readLine(in));
+            readHeaders(in);
+            mServer.publish("fullsize", newImage(1));
+            assertNotNull(readPart(in));
+            assertEquals(1, mServer.getClientCount());
+
+            mServer.stop();
+
+            try {
+                assertEquals(-1, in.read());
+            } catch (SocketException e) {
+                // Reset by the server, closed too.
+            }
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (mServer.getClientCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, mServer.getClientCount());
+        } finally {
+            socket.close();
+        }
+
+        try {
+            new Socket("127.0.0.1", mPort).close();
+            fail("Server still accepts connections");
+        } catch (ConnectException e) {
+            // Expected.
+        }
+    }
+
+    private Socket connect(String name) throws IOException {
+        Socket socket = new Socket("127.0.0.1", mPort);
+        socket.setSoTimeout(TIMEOUT);
+        socket.getOutputStream().write(("GET /" + name + "?token=" + TOKEN + " HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").getBytes("US-ASCII"));
+        return socket;
+    }
+
+    private String requestStatus(String requestLine) throws IOException {
+        Socket socket = new Socket("127.0.0.1", mPort);
+        try {
+            socket.setSoTimeout(TIMEOUT);
+            socket.getOutputStream().write((requestLine + "\r\nHost: 127.0.0.1\r\n\r\n").getBytes("US-ASCII"));
+            InputStream in = socket.getInputStream();
+            String status = readLine(in);
+            readHeaders(in);
+            assertEquals(-1, in.read());
+            return status;
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static byte[] newImage(int index) {
+        byte[] image = new byte[1000 + index];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) (index + i);
+        }
+        return image;
+    }
+
+    /**
+     * Reads a multipart part : boundary, headers, then Content-Length bytes.
+     */
+    private static byte[] readPart(InputStream in) throws IOException {
+        assertEquals("--canvascamera", readLine(in));
+        String headers = readHeaders(in);
+        assertTrue(headers.contains("Content-Type: image/jpeg"));
+
+        int start = headers.indexOf("Content-Length: ") + "Content-Length: ".length();
+        int length = Integer.parseInt(headers.substring(start, headers.indexOf("\r\n", start)));
+        byte[] data = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = in.read(data, read, length - read);
+            if (count < 0) {
+                throw new IOException("Truncated part");
+            }
+            read += count;
+        }
+        assertEquals("", readLine(in));
+        return data;
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        String line;
+        while ((line = readLine(in)) != null && line.length() > 0) {
+            headers.append(line).append("\r\n");
+        }
+        return headers.toString();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                byte[] bytes = line.toByteArray();
+                return new String(bytes, 0, Math.max(0, bytes.length - 1), "US-ASCII");
+            }
+            line.write(c);
+        }
+        return line.size() > 0 ? line.toString("US-ASCII") : null;
+    }
+}
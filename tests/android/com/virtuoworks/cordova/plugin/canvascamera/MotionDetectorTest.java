@@ -0,0 +1,103 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MotionDetectorTest {
+    // YV12 rows of a 100 pixels wide frame are padded to 112 bytes.
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 96;
+    private static final int STRIDE = YuvTransformer.getLumaStride(YuvTransformer.YV12, WIDTH);
+    private static final long MILLISECOND = 1000000L;
+
+    @Test
+    public void skipsStillFrames() {
+        MotionDetector detector = new MotionDetector(4, 0);
+        byte[] frame = newFrame(0);
+
+        assertTrue(emit(detector, 1, frame, 0));
+        assertFalse(detector.accept(2, frame.clone(), WIDTH, HEIGHT, STRIDE, 1));
+    }
+
+    @Test
+    public void emitsChangedFrames() {
+        MotionDetector detector = new MotionDetector(4, 0);
+        assertTrue(emit(detector, 1, newFrame(0), 0));
+        assertTrue(detector.accept(2, newFrame(200), WIDTH, HEIGHT, STRIDE, 1));
+    }
+
+    @Test
+    public void ignoresRowPadding() {
+        MotionDetector detector = new MotionDetector(4, 0);
+        byte[] frame = newFrame(0);
+        assertTrue(emit(detector, 1, frame, 0));
+
+        byte[] padded = frame.clone();
+        for (int y = 0; y < HEIGHT; y++) {
+            Arrays.fill(padded, y * STRIDE + WIDTH, (y + 1) * STRIDE, (byte) 255);
+        }
+        assertFalse(detector.accept(2, padded, WIDTH, HEIGHT, STRIDE, 1));
+    }
+
+    @Test
+    public void emitsKeepAliveFrames() {
+        MotionDetector detector = new MotionDetector(4, 100);
+        byte[] frame = newFrame(0);
+
+        assertTrue(emit(detector, 1, frame, 0));
+        assertFalse(detector.accept(2, frame, WIDTH, HEIGHT, STRIDE, 50 * MILLISECOND));
+        assertTrue(emit(detector, 3, frame, 100 * MILLISECOND));
+        assertFalse(detector.accept(4, frame, WIDTH, HEIGHT, STRIDE, 150 * MILLISECOND));
+    }
+
+    @Test
+    public void comparesWithLastEmittedFrame() {
+        MotionDetector detector = new MotionDetector(4, 0);
+        byte[] still = newFrame(0);
+        byte[] moved = newFrame(200);
+
+        assertTrue(emit(detector, 1, still, 0));
+        // Accepted then dropped : the scene is still compared with the first frame.
+        assertTrue(detector.accept(2, moved, WIDTH, HEIGHT, STRIDE, 1));
+        detector.onDropped(2);
+        assertTrue(detector.accept(3, moved, WIDTH, HEIGHT, STRIDE, 2));
+        detector.onEmitted(3);
+        assertFalse(detector.accept(4, moved, WIDTH, HEIGHT, STRIDE, 3));
+    }
+
+    @Test
+    public void keepsKeepAliveClockForDroppedFrames() {
+        MotionDetector detector = new MotionDetector(4, 100);
+        byte[] frame = newFrame(0);
+
+        assertTrue(emit(detector, 1, frame, 0));
+        assertTrue(detector.accept(2, frame, WIDTH, HEIGHT, STRIDE, 100 * MILLISECOND));
+        // On its way, the keep-alive frame delays the next one.
+        assertFalse(detector.accept(3, frame, WIDTH, HEIGHT, STRIDE, 110 * MILLISECOND));
+        detector.onDropped(2);
+        // Nothing was sent since the first frame.
+        assertTrue(detector.accept(4, frame, WIDTH, HEIGHT, STRIDE, 120 * MILLISECOND));
+    }
+
+    private static boolean emit(MotionDetector detector, long frameId, byte[] frame, long timestamp) {
+        boolean accepted = detector.accept(frameId, frame, WIDTH, HEIGHT, STRIDE, timestamp);
+        if (accepted) {
+            detector.onEmitted(frameId);
+        }
+        return accepted;
+    }
+
+    private static byte[] newFrame(int offset) {
+        byte[] frame = new byte[YuvTransformer.getBufferSize(YuvTransformer.YV12, WIDTH, HEIGHT)];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                frame[y * STRIDE + x] = (byte) (64 + offset / 2 + (x + y) % 64);
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,82 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single 1920x1080 frame rotated to portrait in 1, 2, 4 or 8 strips : the split steps
+ * alone, then the whole frame with its encoding. JPEG encoding is not split, it is stood in for by
+ * ImageIO on the JVM.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripConverterBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Param({"1", "2", "4", "8"})
+    public int strips;
+
+    @Param({"jpeg", "rgba"})
+    public String use;
+
+    private StripConverter mConverter;
+    private YuvTransformer mTransformer;
+    private byte[] mFrame;
+
+    @Setup
+    public void setUp() {
+        mConverter = new StripConverter(Runtime.getRuntime().availableProcessors());
+        mTransformer = new YuvTransformer(YuvTransformer.NV21, WIDTH, HEIGHT);
+        mTransformer.setRotation(90);
+        mTransformer.prepare();
+        mFrame = YuvTransformerTest.newFrame(WIDTH, HEIGHT, 42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mConverter.shutdown();
+    }
+
+    @Benchmark
+    public byte[] transform() {
+        return mConverter.transform(mTransformer, mFrame, false, strips);
+    }
+
+    @Benchmark
+    public byte[] toRgba() {
+        return mConverter.toRgba(mFrame, WIDTH, HEIGHT, strips);
+    }
+
+    /**
+     * Transform then encode, as a fullsize frame is rendered.
+     */
+    @Benchmark
+    public byte[] frame() throws IOException {
+        byte[] yuvData = mConverter.transform(mTransformer, mFrame, false, strips);
+        int width = mTransformer.getOutputWidth();
+        int height = mTransformer.getOutputHeight();
+        if ("rgba".equals(use)) {
+            return mConverter.toRgba(yuvData, width, height, strips);
+        } else {
+            return YuvTransformerBenchmark.compress(yuvData, width, height);
+        }
+    }
+}
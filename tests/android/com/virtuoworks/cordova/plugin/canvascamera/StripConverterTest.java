@@ -0,0 +1,65 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class StripConverterTest {
+    private static final int[] STRIPS = new int[]{1, 2, 3, 4, 8, 1000};
+
+    private StripConverter mConverter;
+
+    @Before
+    public void setUp() {
+        mConverter = new StripConverter(4);
+    }
+
+    @After
+    public void tearDown() {
+        mConverter.shutdown();
+    }
+
+    @Test
+    public void transformsLikeSinglePass() {
+        // 90 output rows with 4 or 8 strips leaves a shorter last strip.
+        byte[] frame = YuvTransformerTest.newFrame(160, 120, 7);
+        for (int format : new int[]{YuvTransformer.NV21, YuvTransformer.YV12}) {
+            byte[] data = YuvTransformerTest.pack(format, frame, 160, 120);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                YuvTransformer transformer = new YuvTransformer(format, 160, 120);
+                transformer.setTargetSize(120, 90);
+                transformer.setRotation(rotation);
+                transformer.setMirror(rotation == 90);
+
+                byte[] expected = transformer.transform(data);
+                byte[] expectedLuma = transformer.transformLuma(data, null);
+                for (int strips : STRIPS) {
+                    String message = "format " + format + ", rotation " + rotation + ", " + strips + " strips";
+                    assertArrayEquals(message, expected, mConverter.transform(transformer, data, false, strips));
+                    assertArrayEquals(message, expectedLuma, mConverter.transform(transformer, data, true, strips));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void convertsToRgbaLikeSinglePass() {
+        byte[] frame = YuvTransformerTest.newFrame(160, 90, 11);
+        byte[] expected = YuvTransformer.toRgba(frame, 160, 90, null);
+        for (int strips : STRIPS) {
+            assertArrayEquals(strips + " strips", expected, mConverter.toRgba(frame, 160, 90, strips));
+        }
+    }
+
+    @Test
+    public void convertsOnCallingThreadOnceShutDown() {
+        byte[] frame = YuvTransformerTest.newFrame(160, 120, 13);
+        YuvTransformer transformer = new YuvTransformer(YuvTransformer.NV21, 160, 120);
+        byte[] expected = transformer.transform(frame);
+
+        mConverter.shutdown();
+        assertArrayEquals(expected, mConverter.transform(transformer, frame, false, 4));
+    }
+}
@@ -0,0 +1,186 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileTrackerTest {
+    // 4x2 tiles of 64x64 pixels.
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 128;
+    private static final long NANOS_PER_MILLISECOND = 1000000L;
+
+    @Test
+    public void startsWithKeyframe() {
+        TileTracker tracker = new TileTracker(0);
+        TileTracker.Delta delta = tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+
+        assertTrue(delta.keyframe);
+        assertTrue(delta.tiles.isEmpty());
+    }
+
+    @Test
+    public void sendsNoTileForSameFrame() {
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+        TileTracker.Delta delta = tracker.update(2, newFrame(), WIDTH, HEIGHT, 1);
+
+        assertFalse(delta.keyframe);
+        assertTrue(delta.tiles.isEmpty());
+    }
+
+    @Test
+    public void findsDirtyTile() {
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+
+        byte[] frame = newFrame();
+        fill(frame, 70, 10, 8, 8, 200);
+        TileTracker.Delta delta = tracker.update(2, frame, WIDTH, HEIGHT, 1);
+
+        assertFalse(delta.keyframe);
+        assertEquals(1, delta.tiles.size());
+        assertTile(delta.tiles.get(0), 64, 0, 64, 64);
+    }
+
+    @Test
+    public void ignoresNoiseAndTinyChanges() {
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+
+        byte[] frame = newFrame();
+        // Below the sample threshold everywhere.
+        fill(frame, 0, 0, WIDTH, HEIGHT, 100 + 20);
+        // A couple of changed samples only.
+        fill(frame, 130, 70, 2, 2, 255);
+        assertTrue(tracker.update(2, frame, WIDTH, HEIGHT, 1).tiles.isEmpty());
+    }
+
+    @Test
+    public void mergesDirtyTilesOfRow() {
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+
+        byte[] frame = newFrame();
+        fill(frame, 64, 0, 128, 8, 200);
+        fill(frame, 0, 100, 8, 8, 200);
+        TileTracker.Delta delta = tracker.update(2, frame, WIDTH, HEIGHT, 1);
+
+        assertFalse(delta.keyframe);
+        assertEquals(2, delta.tiles.size());
+        assertTile(delta.tiles.get(0), 64, 0, 128, 64);
+        assertTile(delta.tiles.get(1), 0, 64, 64, 64);
+    }
+
+    @Test
+    public void clipsEdgeTiles() {
+        // 200x100 frame : right tiles are 8 pixels wide, bottom tiles 36 pixels high.
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(1, newFrame(200, 100), 200, 100, 0);
+
+        byte[] frame = newFrame(200, 100);
+        fill(frame, 192, 64, 8, 36, 200, 200);
+        TileTracker.Delta delta = tracker.update(2, frame, 200, 100, 1);
+
+        assertEquals(1, delta.tiles.size());
+        assertTile(delta.tiles.get(0), 192, 64, 8, 36);
+    }
+
+    @Test
+    public void updatesReferenceWithSentTiles() {
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+
+        byte[] frame = newFrame();
+        fill(frame, 70, 10, 8, 8, 200);
+        assertEquals(1, tracker.update(2, frame, WIDTH, HEIGHT, 1).tiles.size());
+        assertTrue(tracker.update(3, frame, WIDTH, HEIGHT, 2).tiles.isEmpty());
+    }
+
+    @Test
+    public void promotesMostlyDirtyFrameToKeyframe() {
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+
+        byte[] frame = newFrame();
+        // 4 dirty tiles out of 8 is still a delta, 5 is a keyframe.
+        fill(frame, 0, 0, WIDTH, 8, 200);
+        TileTracker.Delta delta = tracker.update(2, frame, WIDTH, HEIGHT, 1);
+        assertFalse(delta.keyframe);
+        assertEquals(1, delta.tiles.size());
+
+        fill(frame, 0, 0, WIDTH, 8, 50);
+        fill(frame, 0, 64, 8, 8, 200);
+        delta = tracker.update(3, frame, WIDTH, HEIGHT, 2);
+        assertTrue(delta.keyframe);
+        assertTrue(delta.tiles.isEmpty());
+        // The keyframe is the new reference.
+        assertTrue(tracker.update(4, frame, WIDTH, HEIGHT, 3).tiles.isEmpty());
+    }
+
+    @Test
+    public void sendsKeyframeAtInterval() {
+        TileTracker tracker = new TileTracker(1000);
+        tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+
+        assertFalse(tracker.update(2, newFrame(), WIDTH, HEIGHT, 999 * NANOS_PER_MILLISECOND).keyframe);
+        assertTrue(tracker.update(3, newFrame(), WIDTH, HEIGHT, 1000 * NANOS_PER_MILLISECOND).keyframe);
+    }
+
+    @Test
+    public void sendsKeyframeAfterSizeChangeOrReset() {
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(1, newFrame(), WIDTH, HEIGHT, 0);
+
+        assertTrue(tracker.update(2, newFrame(128, 128), 128, 128, 1).keyframe);
+        assertFalse(tracker.update(3, newFrame(128, 128), 128, 128, 2).keyframe);
+
+        tracker.reset();
+        assertTrue(tracker.update(4, newFrame(128, 128), 128, 128, 3).keyframe);
+    }
+
+    @Test
+    public void rejectsOlderFrames() {
+        TileTracker tracker = new TileTracker(0);
+        tracker.update(2, newFrame(), WIDTH, HEIGHT, 0);
+
+        assertNull(tracker.update(1, newFrame(), WIDTH, HEIGHT, 1));
+        assertNull(tracker.update(2, newFrame(), WIDTH, HEIGHT, 1));
+        assertFalse(tracker.update(3, newFrame(), WIDTH, HEIGHT, 2).keyframe);
+    }
+
+    private static void assertTile(TileTracker.Tile tile, int x, int y, int width, int height) {
+        assertEquals(x, tile.x);
+        assertEquals(y, tile.y);
+        assertEquals(width, tile.width);
+        assertEquals(height, tile.height);
+    }
+
+    private static byte[] newFrame() {
+        return newFrame(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Uniform luma plane of the given size, followed by its NV21 chroma plane.
+     */
+    private static byte[] newFrame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        fill(frame, 0, 0, width, height, 100, width);
+        return frame;
+    }
+
+    private static void fill(byte[] frame, int x, int y, int width, int height, int value) {
+        fill(frame, x, y, width, height, value, WIDTH);
+    }
+
+    private static void fill(byte[] frame, int x, int y, int width, int height, int value, int stride) {
+        for (int row = y; row < y + height; row++) {
+            for (int column = x; column < x + width; column++) {
+                frame[row * stride + column] = (byte) value;
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Compares the YUV route of a 1280x720 preview frame scaled to 640x360 and rotated, with the
+ * JPEG to Bitmap to Matrix route it replaced. On the JVM, YuvImage.compressToJpeg, BitmapFactory
+ * and Bitmap.createBitmap with a Matrix are stood in for by ImageIO and AffineTransformOp.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvTransformerBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int TARGET_WIDTH = 640;
+    private static final int TARGET_HEIGHT = 360;
+    private static final float QUALITY = 0.85f;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    @Param({"false", "true"})
+    public boolean mirror;
+
+    private byte[] mFrame;
+    private YuvTransformer mTransformer;
+    private byte[] mOutput;
+
+    @Setup
+    public void setUp() {
+        mFrame = YuvTransformerTest.newFrame(WIDTH, HEIGHT, 42);
+        mTransformer = new YuvTransformer(YuvTransformer.NV21, WIDTH, HEIGHT);
+        mTransformer.setTargetSize(TARGET_WIDTH, TARGET_HEIGHT);
+        mTransformer.setRotation(rotation);
+        mTransformer.setMirror(mirror);
+        mTransformer.prepare();
+        mOutput = new byte[mTransformer.getOutputSize()];
+    }
+
+    /**
+     * Baseline : full frame to JPEG, JPEG decoded, scaled and rotated by a matrix, then encoded again.
+     */
+    @Benchmark
+    public byte[] jpegBitmapMatrix() throws IOException {
+        byte[] jpeg = compress(mFrame, WIDTH, HEIGHT);
+        BufferedImage bitmap = ImageIO.read(new ByteArrayInputStream(jpeg));
+
+        AffineTransform matrix = new AffineTransform();
+        double scale = TARGET_WIDTH / (double) WIDTH;
+        boolean swap = rotation == 90 || rotation == 270;
+        matrix.translate((swap ? TARGET_HEIGHT : TARGET_WIDTH) / 2.0, (swap ? TARGET_WIDTH : TARGET_HEIGHT) / 2.0);
+        matrix.rotate(Math.toRadians(rotation));
+        matrix.scale(mirror ? -scale : scale, scale);
+        matrix.translate(-WIDTH / 2.0, -HEIGHT / 2.0);
+
+        BufferedImage transformed = new BufferedImage(swap ? TARGET_HEIGHT : TARGET_WIDTH, swap ? TARGET_WIDTH : TARGET_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        new AffineTransformOp(matrix, AffineTransformOp.TYPE_BILINEAR).filter(bitmap, transformed);
+        return compress(transformed);
+    }
+
+    /**
+     * Transformed in YUV space, then encoded once.
+     */
+    @Benchmark
+    public byte[] yuvTransformer() throws IOException {
+        mTransformer.transform(mFrame, mOutput);
+        return compress(mOutput, mTransformer.getOutputWidth(), mTransformer.getOutputHeight());
+    }
+
+    /**
+     * The YUV transformation alone, without the encoding both routes end with.
+     */
+    @Benchmark
+    public byte[] yuvTransformerOnly() {
+        return mTransformer.transform(mFrame, mOutput);
+    }
+
+    static byte[] compress(byte[] nv21, int width, int height) throws IOException {
+        byte[] rgba = YuvTransformer.toRgba(nv21, width, height, null);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0, j = 0; i < pixels.length; i += 3, j += 4) {
+            pixels[i] = rgba[j + 2];
+            pixels[i + 1] = rgba[j + 1];
+            pixels[i + 2] = rgba[j];
+        }
+        return compress(image);
+    }
+
+    private static byte[] compress(BufferedImage image) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(QUALITY);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out);
+        try {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            stream.close();
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
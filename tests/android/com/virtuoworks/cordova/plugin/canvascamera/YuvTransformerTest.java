@@ -0,0 +1,267 @@
+package com.virtuoworks.cordova.plugin.canvascamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class YuvTransformerTest {
+
+    // 4x2 NV21 frame : luma is 0 to 7 row by row, a single chroma row of two VU pairs.
+    private static final byte[] SMALL_FRAME = new byte[]{
+            0, 1, 2, 3,
+            4, 5, 6, 7,
+            10, 20, 11, 21
+    };
+
+    @Test
+    public void rotatesSmallFrame() {
+        assertTransform(0, false, 4, 2, new byte[]{
+                0, 1, 2, 3,
+                4, 5, 6, 7,
+                10, 20, 11, 21
+        });
+        assertTransform(90, false, 2, 4, new byte[]{
+                4, 0,
+                5, 1,
+                6, 2,
+                7, 3,
+                10, 20,
+                11, 21
+        });
+        assertTransform(180, false, 4, 2, new byte[]{
+                7, 6, 5, 4,
+                3, 2, 1, 0,
+                11, 21, 10, 20
+        });
+        assertTransform(270, false, 2, 4, new byte[]{
+                3, 7,
+                2, 6,
+                1, 5,
+                0, 4,
+                11, 21,
+                10, 20
+        });
+    }
+
+    @Test
+    public void mirrorsSmallFrameBeforeRotation() {
+        assertTransform(0, true, 4, 2, new byte[]{
+                3, 2, 1, 0,
+                7, 6, 5, 4,
+                11, 21, 10, 20
+        });
+        assertTransform(90, true, 2, 4, new byte[]{
+                7, 3,
+                6, 2,
+                5, 1,
+                4, 0,
+                11, 21,
+                10, 20
+        });
+        assertTransform(180, true, 4, 2, new byte[]{
+                4, 5, 6, 7,
+                0, 1, 2, 3,
+                10, 20, 11, 21
+        });
+        assertTransform(270, true, 2, 4, new byte[]{
+                0, 4,
+                1, 5,
+                2, 6,
+                3, 7,
+                10, 20,
+                11, 21
+        });
+    }
+
+    @Test
+    public void cropsSmallFrameToAspect() {
+        // 8x4 frame cropped to a square : the 4 center columns are kept.
+        byte[] frame = new byte[8 * 4 + 8 * 2];
+        for (int i = 0; i < 8 * 4; i++) {
+            frame[i] = (byte) i;
+        }
+        for (int i = 0; i < 8 * 2; i++) {
+            frame[8 * 4 + i] = (byte) (100 + i);
+        }
+
+        for (int format : new int[]{YuvTransformer.NV21, YuvTransformer.YV12}) {
+            YuvTransformer transformer = new YuvTransformer(format, 8, 4);
+            transformer.setTargetSize(4, 4);
+            transformer.setCropToAspect(true);
+
+            assertEquals(4, transformer.getOutputWidth());
+            assertEquals(4, transformer.getOutputHeight());
+            assertArrayEquals(new byte[]{
+                    2, 3, 4, 5,
+                    10, 11, 12, 13,
+                    18, 19, 20, 21,
+                    26, 27, 28, 29,
+                    102, 103, 104, 105,
+                    110, 111, 112, 113
+            }, transformer.transform(pack(format, frame, 8, 4)));
+        }
+    }
+
+    @Test
+    public void scalesLikeReference() {
+        assertLikeReference(32, 24, false, 0, 0, 64, 48, 32, 24);
+    }
+
+    @Test
+    public void cropsToSquareLikeReference() {
+        assertLikeReference(24, 24, true, 8, 0, 48, 48, 24, 24);
+    }
+
+    @Test
+    public void cropsToWideAspectLikeReference() {
+        // 64 / 2.5 = 25.6, rounded then made even : 26 rows from row 10.
+        assertLikeReference(40, 16, true, 0, 10, 64, 26, 40, 16);
+    }
+
+    @Test
+    public void transformsLumaOnly() {
+        byte[] frame = newFrame(64, 48, 1);
+        YuvTransformer transformer = new YuvTransformer(YuvTransformer.NV21, 64, 48);
+        transformer.setTargetSize(32, 24);
+        transformer.setRotation(90);
+
+        byte[] luma = transformer.transformLuma(frame, null);
+        byte[] full = transformer.transform(frame);
+
+        assertEquals(32 * 24, luma.length);
+        for (int i = 0; i < luma.length; i++) {
+            assertEquals(full[i], luma[i]);
+        }
+    }
+
+    private static void assertTransform(int rotation, boolean mirror, int width, int height, byte[] expected) {
+        for (int format : new int[]{YuvTransformer.NV21, YuvTransformer.YV12}) {
+            YuvTransformer transformer = new YuvTransformer(format, 4, 2);
+            transformer.setRotation(rotation);
+            transformer.setMirror(mirror);
+
+            String message = "format " + format + ", rotation " + rotation + ", mirror " + mirror;
+            assertEquals(message, width, transformer.getOutputWidth());
+            assertEquals(message, height, transformer.getOutputHeight());
+            assertArrayEquals(message, expected, transformer.transform(pack(format, SMALL_FRAME, 4, 2)));
+        }
+    }
+
+    /**
+     * Compares a 64x48 frame with a pixel by pixel reference, for both formats, every rotation and mirroring.
+     */
+    private static void assertLikeReference(int targetWidth, int targetHeight, boolean cropToAspect,
+                                            int cropLeft, int cropTop, int cropWidth, int cropHeight, int scaledWidth, int scaledHeight) {
+        byte[] frame = newFrame(64, 48, 42);
+        for (int format : new int[]{YuvTransformer.NV21, YuvTransformer.YV12}) {
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                for (boolean mirror : new boolean[]{false, true}) {
+                    YuvTransformer transformer = new YuvTransformer(format, 64, 48);
+                    transformer.setTargetSize(targetWidth, targetHeight);
+                    transformer.setCropToAspect(cropToAspect);
+                    transformer.setRotation(rotation);
+                    transformer.setMirror(mirror);
+
+                    byte[] expected = reference(frame, 64, 48, rotation, mirror, cropLeft, cropTop, cropWidth, cropHeight, scaledWidth, scaledHeight);
+                    String message = "format " + format + ", rotation " + rotation + ", mirror " + mirror;
+                    assertArrayEquals(message, expected, transformer.transform(pack(format, frame, 64, 48)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps each output pixel back to its source pixel : undoes the rotation, the mirroring, then the scaling.
+     * Samples are taken at the center of each scaled pixel.
+     */
+    private static byte[] reference(byte[] nv21, int width, int height, int rotation, boolean mirror,
+                                    int cropLeft, int cropTop, int cropWidth, int cropHeight, int scaledWidth, int scaledHeight) {
+        boolean swap = rotation == 90 || rotation == 270;
+        int outputWidth = swap ? scaledHeight : scaledWidth;
+        int outputHeight = swap ? scaledWidth : scaledHeight;
+        byte[] output = new byte[outputWidth * outputHeight * 3 / 2];
+
+        for (int y = 0; y < outputHeight; y++) {
+            for (int x = 0; x < outputWidth; x++) {
+                int[] source = getSource(x, y, rotation, mirror, cropLeft, cropTop, cropWidth, cropHeight, scaledWidth, scaledHeight);
+                output[y * outputWidth + x] = nv21[source[1] * width + source[0]];
+            }
+        }
+
+        int chroma = outputWidth * outputHeight;
+        for (int y = 0; y < outputHeight / 2; y++) {
+            for (int x = 0; x < outputWidth / 2; x++) {
+                int[] source = getSource(x, y, rotation, mirror, cropLeft / 2, cropTop / 2, cropWidth / 2, cropHeight / 2, scaledWidth / 2, scaledHeight / 2);
+                int offset = width * height + source[1] * width + source[0] * 2;
+                output[chroma + y * outputWidth + x * 2] = nv21[offset];
+                output[chroma + y * outputWidth + x * 2 + 1] = nv21[offset + 1];
+            }
+        }
+        return output;
+    }
+
+    private static int[] getSource(int x, int y, int rotation, boolean mirror,
+                                   int cropLeft, int cropTop, int cropWidth, int cropHeight, int scaledWidth, int scaledHeight) {
+        int scaledX;
+        int scaledY;
+        switch (rotation) {
+            case 90:
+                scaledX = y;
+                scaledY = scaledHeight - 1 - x;
+                break;
+            case 180:
+                scaledX = scaledWidth - 1 - x;
+                scaledY = scaledHeight - 1 - y;
+                break;
+            case 270:
+                scaledX = scaledWidth - 1 - y;
+                scaledY = x;
+                break;
+            default:
+                scaledX = x;
+                scaledY = y;
+                break;
+        }
+        if (mirror) {
+            scaledX = scaledWidth - 1 - scaledX;
+        }
+        int sourceX = cropLeft + (int) Math.floor((scaledX + 0.5) * cropWidth / scaledWidth);
+        int sourceY = cropTop + (int) Math.floor((scaledY + 0.5) * cropHeight / scaledHeight);
+        return new int[]{sourceX, sourceY};
+    }
+
+    static byte[] newFrame(int width, int height, long seed) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+
+    /**
+     * Returns a NV21 frame as is, or repacked as YV12 : aligned Y plane, then V and U planes.
+     */
+    static byte[] pack(int format, byte[] nv21, int width, int height) {
+        if (format != YuvTransformer.YV12) {
+            return nv21;
+        }
+        int lumaStride = (width + 15) & ~15;
+        int chromaStride = ((lumaStride / 2) + 15) & ~15;
+        byte[] yv12 = new byte[YuvTransformer.getBufferSize(format, width, height)];
+        int vOffset = lumaStride * height;
+        int uOffset = vOffset + chromaStride * (height / 2);
+
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(nv21, y * width, yv12, y * lumaStride, width);
+        }
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                int offset = width * height + y * width + x * 2;
+                yv12[vOffset + y * chromaStride + x] = nv21[offset];
+                yv12[uOffset + y * chromaStride + x] = nv21[offset + 1];
+            }
+        }
+        return yv12;
+    }
+}
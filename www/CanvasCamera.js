@@ -19,7 +19,19 @@
 *      height: 288
 *    },
 *    fps: 30,
-*    use: 'file',
+*    maxFramesInFlight: 0, // number of cores, at most 4
+*    strips: 0, // one per core from 1280x720 in rgba and luma
+*    use: 'file', // 'data', 'binary', 'rgba', 'luma' or 'stream' on android
+*    mode: 'push',
+*    motionThreshold: 0,
+*    keepAliveInterval: 1000,
+*    delta: false,
+*    keyframeInterval: 2000,
+*    roi: null, // {x: 0.25, y: 0.25, width: 0.5, height: 0.5}
+*    renditions: [], // {name, width, height, format, quality, fpsDivisor, use, crop}
+*    quality: 100,
+*    adaptiveQuality: false,
+*    frameReportInterval: 1000,
 *    flashMode: false,
 *    hasThumbnail: true,
 *    thumbnailRatio: 1/6,
@@ -35,7 +47,12 @@ window.requestAnimationFrame = window.requestAnimationFrame || window.mozRequest
 var CanvasCamera = function() {
     this.canvas = {};
     this.options = {};
+    this.session = null;
     this.onCapture = null;
+    this.frameReport = null;
+    this.frameReportTimer = null;
+    this.frameRequests = {};
+    this.frameRequestTimeout = 5000;
     this.nativeClass = 'CanvasCamera';
 };
 
@@ -145,9 +162,22 @@ CanvasCamera.prototype.createRenderer = (function (element, canvasCamera) {
         this.size = null;
         this.image = null;
         this.context = null;
+        this.objectURL = null;
         this.orientation = null;
 
         this.buffer = [];
+        this.frameId = null;
+
+        this.streamImage = null;
+        this.streamTime = 0;
+
+        this.patches = [];
+        this.composite = null;
+        // after a tile failed to load, deltas are skipped until the next keyframe.
+        this.keyframeNeeded = false;
+
+        // rendition canvases draw their own type of image.
+        this.use = null;
 
         this.available = true;
         this.fullscreen = false;
@@ -166,25 +196,13 @@ CanvasCamera.prototype.createRenderer = (function (element, canvasCamera) {
             this.image = new Image();
 
             this.image.addEventListener('load', function(event) {
-
-                var frame = this.canvasCamera.createFrame(this.image, this.element , this);
-
-                this.resize().clear();
-                if (this.onBeforeDraw) {
-                    this.onBeforeDraw(frame);
-                }
-               // this.draw(frame);
-                if (this.onAfterDraw) {
-                    this.onAfterDraw(frame);
-                }
-
-                frame.recycle();
-                frame = null;
-
-                this.enable();
+                this.revokeObjectURL();
+                this.paint(this.image);
             }.bind(this));
 
             this.image.addEventListener('error', function(event) {
+                this.report(this.data, 'failed');
+                this.revokeObjectURL();
                 this.clear().enable();
             }.bind(this));
 
@@ -199,7 +217,28 @@ CanvasCamera.prototype.createRenderer = (function (element, canvasCamera) {
         if (this.canvasCamera.getUIOrientation() !== this.orientation) {
             this.invert();
         }
-        this.buffer = [];
+        this.skip('replaced');
+    };
+
+    CanvasCamera.Renderer.prototype.paint = function(image) {
+        var frame = this.canvasCamera.createFrame(image, this.element , this);
+
+        this.resize().clear();
+        if (this.onBeforeDraw) {
+            this.onBeforeDraw(frame);
+        }
+        this.draw(frame);
+        if (this.onAfterDraw) {
+            this.onAfterDraw(frame);
+        }
+        this.report(this.data, 'drawn');
+
+        frame.recycle();
+        frame = null;
+
+        this.enable();
+
+        return this;
     };
 
     CanvasCamera.Renderer.prototype.clear = function() {
@@ -213,7 +252,24 @@ CanvasCamera.prototype.createRenderer = (function (element, canvasCamera) {
         this.canvasCamera.dispatch('beforeframerendering', this, frame);
 
         if (frame) {
-            this.context.drawImage(frame.image, frame.sx, frame.sy, frame.sWidth, frame.sHeight, frame.dx, frame.dy, frame.dWidth, frame.dHeight);
+            if (window.ImageData && frame.image instanceof window.ImageData) {
+                if (frame.dx === 0 && frame.dy === 0 && frame.dWidth === frame.sWidth && frame.dHeight === frame.sHeight) {
+                    this.context.putImageData(frame.image, 0, 0);
+                } else {
+                    // putImageData does not scale, pixels go through an offscreen canvas.
+                    if (!this.pixels) {
+                        this.pixels = document.createElement('canvas');
+                    }
+                    if (this.pixels.width !== frame.image.width || this.pixels.height !== frame.image.height) {
+                        this.pixels.width = frame.image.width;
+                        this.pixels.height = frame.image.height;
+                    }
+                    this.pixels.getContext('2d').putImageData(frame.image, 0, 0);
+                    this.context.drawImage(this.pixels, frame.sx, frame.sy, frame.sWidth, frame.sHeight, frame.dx, frame.dy, frame.dWidth, frame.dHeight);
+                }
+            } else {
+                this.context.drawImage(frame.image, frame.sx, frame.sy, frame.sWidth, frame.sHeight, frame.dx, frame.dy, frame.dWidth, frame.dHeight);
+            }
         }
 
         this.canvasCamera.dispatch('afterframerendering', this, frame);
@@ -222,9 +278,19 @@ CanvasCamera.prototype.createRenderer = (function (element, canvasCamera) {
     };
 
     CanvasCamera.Renderer.prototype.bufferize = function(data) {
+        if (data && typeof data.frameId === 'number') {
+            // frames never go backwards.
+            if (this.frameId !== null && data.frameId < this.frameId) {
+                this.report(data, 'replaced');
+                return this;
+            }
+            this.frameId = data.frameId;
+        }
         if (this.enabled()) {
             this.buffer.push(data);
             this.run();
+        } else {
+            this.report(data, 'busy');
         }
 
         return this;
@@ -234,8 +300,10 @@ CanvasCamera.prototype.createRenderer = (function (element, canvasCamera) {
         if (this.enabled()) {
             window.requestAnimationFrame(function(timestamp) {
                 if (this.buffer.length) {
-                    this.render(this.buffer.pop());
-                    this.buffer = [];
+                    var data = this.buffer.pop();
+                    // only the newest frame is rendered.
+                    this.skip('replaced');
+                    this.render(data);
                 }
             }.bind(this));
         }
@@ -243,34 +311,247 @@ CanvasCamera.prototype.createRenderer = (function (element, canvasCamera) {
         return this;
     };
 
+    CanvasCamera.Renderer.prototype.skip = function(reason) {
+        for (var i = 0; i < this.buffer.length; i++) {
+            this.report(this.buffer[i], reason);
+        }
+        this.buffer = [];
+
+        return this;
+    };
+
+    CanvasCamera.Renderer.prototype.report = function(data, state) {
+        if (this.canvasCamera && this === this.canvasCamera.canvas.fullsize) {
+            this.canvasCamera.reportFrame(data, state);
+        }
+
+        return this;
+    };
+
     CanvasCamera.Renderer.prototype.render = function(data) {
+        if (this.disabled()) {
+            this.report(data, 'busy');
+        }
         if (this.enabled()) {
-            if (this.canvasCamera && this.canvasCamera.options && this.canvasCamera.options.use) {
-                if (data && data[this.canvasCamera.options.use]) {
+            var use = this.getUse();
+            if (use) {
+                if (data && data[use]) {
                     this.data = data;
                     if (data.hasOwnProperty('orientation') && data.orientation) {
                         this.orientation = data.orientation;
                     }
 
+                    this.disable();
+
                     if (this.image) {
-                        // type can be 'data' or 'file'
-                        switch(this.canvasCamera.options.use) {
-                            case 'file':
-                                if (data[this.canvasCamera.options.use].search('file://') > -1) {
-                                    // add a random seed to prevent browser caching.
-                                    this.image.src = data[this.canvasCamera.options.use] + '?seed=' + Math.round((new Date()).getTime() * Math.random() * 1000);
-                                } else {
-                                    this.image.src = data[this.canvasCamera.options.use];
-                                }
+                        // type can be 'data', 'file', 'binary', 'rgba' or 'luma'
+                        // file paths are unique for each frame, no cache busting is needed.
+                        switch(use) {
+                            case 'rgba':
+                            case 'luma':
+                                this.paint(this.createImageData(data));
+                            break;
+                            case 'binary':
+                                this.revokeObjectURL();
+                                this.objectURL = window.URL.createObjectURL(new Blob([data[use]], {
+                                    type: 'image/jpeg'
+                                }));
+                                this.image.src = this.objectURL;
                             break;
                             default:
-                                this.image.src = data[this.canvasCamera.options.use];
+                                this.image.src = data[use];
                         }
                     }
+                }
+            }
+        }
 
-                    this.disable();
+        return this;
+    };
+
+    CanvasCamera.Renderer.prototype.patch = function(data) {
+        // every delta frame applies to the previous one, none is skipped.
+        if (!data.keyframe && this.keyframeNeeded) {
+            this.report(data, 'replaced');
+            return this;
+        }
+        if (data.keyframe) {
+            this.keyframeNeeded = false;
+            // queued deltas are replaced by the keyframe, except the one being applied.
+            while (this.patches.length > 1) {
+                this.report(this.patches.pop(), 'replaced');
+            }
+        }
+        this.patches.push(data);
+        if (this.patches.length === 1) {
+            this.applyPatch(data);
+        }
+
+        return this;
+    };
+
+    CanvasCamera.Renderer.prototype.applyPatch = function(data) {
+        var parts = data.keyframe ? [{ x: 0, y: 0, source: data }] : (data.tiles || []).map(function(tile) {
+            return { x: tile.x, y: tile.y, source: tile };
+        });
+        var pending = parts.length;
+        var failed = false;
+
+        var done = function() {
+            if (failed) {
+                // the composite would miss a tile the native side considers delivered.
+                this.patches.shift();
+                this.keyframeNeeded = true;
+                while (this.patches.length && !this.patches[0].keyframe) {
+                    this.report(this.patches.shift(), 'replaced');
+                }
+                if (this.patches.length) {
+                    this.keyframeNeeded = false;
+                    this.applyPatch(this.patches[0]);
+                } else if (this.canvasCamera) {
+                    this.canvasCamera.requestKeyframe();
+                }
+                return;
+            }
+            if (!this.composite) {
+                this.composite = document.createElement('canvas');
+            }
+            var context = this.composite.getContext('2d');
+            if (data.keyframe && (this.composite.width !== data.width || this.composite.height !== data.height)) {
+                this.composite.width = data.width;
+                this.composite.height = data.height;
+            }
+            parts.forEach(function(part) {
+                if (part.image) {
+                    context.drawImage(part.image, part.x, part.y);
+                }
+            });
+
+            this.data = data;
+            if (data.hasOwnProperty('orientation') && data.orientation) {
+                this.orientation = data.orientation;
+            }
+            if (this.enabled()) {
+                this.paint(this.composite);
+            } else {
+                this.report(data, 'busy');
+            }
+
+            this.patches.shift();
+            if (this.patches.length) {
+                this.applyPatch(this.patches[0]);
+            }
+        }.bind(this);
+
+        if (!pending) {
+            done();
+        }
+
+        parts.forEach(function(part) {
+            var image = new Image();
+            var objectURL = null;
+            var source = part.source[this.getUse()];
+            var loaded = function() {
+                if (objectURL) {
+                    window.URL.revokeObjectURL(objectURL);
+                }
+                if (--pending === 0) {
+                    done();
                 }
+            };
+            image.addEventListener('load', function() {
+                part.image = image;
+                loaded();
+            });
+            image.addEventListener('error', function() {
+                if (!failed) {
+                    failed = true;
+                    this.report(data, 'failed');
+                }
+                loaded();
+            }.bind(this));
+            if (this.getUse() === 'binary') {
+                objectURL = window.URL.createObjectURL(new Blob([source], {
+                    type: 'image/jpeg'
+                }));
+                image.src = objectURL;
+            } else {
+                image.src = source;
+            }
+        }.bind(this));
+
+        return this;
+    };
+
+    CanvasCamera.Renderer.prototype.stream = function(url) {
+        if (this.streamImage && this.streamImage.src === url) {
+            return this;
+        }
+        this.unstream();
+
+        // the WebView decodes the MJPEG stream, each animation frame paints its current image.
+        this.streamImage = new Image();
+        this.streamImage.crossOrigin = 'anonymous';
+        this.streamImage.src = url;
+
+        var image = this.streamImage;
+        var loop = function(timestamp) {
+            if (this.streamImage !== image) {
+                return;
             }
+            var fps = parseFloat(this.canvasCamera.options.fps);
+            if (this.enabled() && image.complete && image.naturalWidth > 0 && (isNaN(fps) || fps <= 0 || timestamp - this.streamTime >= 1000 / fps)) {
+                this.streamTime = timestamp;
+                this.disable();
+                this.paint(image);
+            }
+            window.requestAnimationFrame(loop);
+        }.bind(this);
+        window.requestAnimationFrame(loop);
+
+        return this;
+    };
+
+    CanvasCamera.Renderer.prototype.unstream = function() {
+        if (this.streamImage) {
+            // closes the connection.
+            this.streamImage.src = '';
+            this.streamImage = null;
+        }
+
+        return this;
+    };
+
+    CanvasCamera.Renderer.prototype.getUse = function() {
+        if (this.use) {
+            return this.use;
+        }
+        return (this.canvasCamera && this.canvasCamera.options) ? this.canvasCamera.options.use : null;
+    };
+
+    CanvasCamera.Renderer.prototype.createImageData = function(data) {
+        var width = parseInt(data.width, 10);
+        var height = parseInt(data.height, 10);
+        var imageData = this.context.createImageData(width, height);
+        var pixels = new Uint8Array(data[this.getUse()]);
+
+        if (this.getUse() === 'luma') {
+            // grey levels are expanded to opaque RGBA pixels.
+            for (var i = 0, j = 0; i < pixels.length; i++, j += 4) {
+                imageData.data[j] = imageData.data[j + 1] = imageData.data[j + 2] = pixels[i];
+                imageData.data[j + 3] = 255;
+            }
+        } else {
+            imageData.data.set(pixels);
+        }
+
+        return imageData;
+    };
+
+    CanvasCamera.Renderer.prototype.revokeObjectURL = function() {
+        if (this.objectURL) {
+            window.URL.revokeObjectURL(this.objectURL);
+            this.objectURL = null;
         }
 
         return this;
@@ -400,24 +681,45 @@ CanvasCamera.prototype.createRenderer = (function (element, canvasCamera) {
     };
 }());
 
-CanvasCamera.prototype.initialize = function(fcanvas, tcanvas) {
+CanvasCamera.prototype.initialize = function(fcanvas, tcanvas, options) {
+    if (options && options.prewarm) {
+        // opens the camera ahead of start().
+        this.prewarm(options);
+    }
+
     if(fcanvas && fcanvas.getContext) {
         this.canvas.fullsize = this.createRenderer(fcanvas, this);
         if (tcanvas && tcanvas.getContext) {
             this.canvas.thumbnail = this.createRenderer(tcanvas, this);
         }
-    } else {
-        if (fcanvas.fullsize && fcanvas.fullsize.getContext) {
-            this.canvas.fullsize = this.createRenderer(fcanvas.fullsize, this);
-            if (fcanvas.thumbnail && fcanvas.thumbnail.getContext) {
-                this.canvas.thumbnail = this.createRenderer(fcanvas.thumbnail, this);
+    } else if (fcanvas && typeof fcanvas === 'object') {
+        // fullsize, thumbnail and rendition canvases, by name.
+        for (var name in fcanvas) {
+            if (fcanvas.hasOwnProperty(name) && fcanvas[name] && fcanvas[name].getContext) {
+                this.canvas[name] = this.createRenderer(fcanvas[name], this);
             }
         }
     }
 };
 
+CanvasCamera.prototype.prewarm = function(options, onError, onSuccess) {
+    if (!window.cordova || window.cordova.platformId !== 'android') {
+        return;
+    }
+    exec(function(data) {
+        if (onSuccess && typeof onSuccess === 'function') {
+            onSuccess(data);
+        }
+    }.bind(this), function(error) {
+        if (onError && typeof onError === 'function') {
+            onError(error);
+        }
+    }.bind(this), this.nativeClass, 'prewarm', [options || {}]);
+};
+
 CanvasCamera.prototype.start = function(options, onError, onSuccess) {
     this.options = options;
+    this.session = null;
     this.setRenderingPresets();
 
     if (onSuccess && typeof onSuccess === 'function') {
@@ -427,6 +729,7 @@ CanvasCamera.prototype.start = function(options, onError, onSuccess) {
     this.enableRenderers();
     exec(this.capture.bind(this), function(error) {
         this.disableRenderers();
+        this.rejectFrameRequests('Capture failed.');
         if (onError && typeof onError === 'function') {
             onError(error);
         }
@@ -435,6 +738,9 @@ CanvasCamera.prototype.start = function(options, onError, onSuccess) {
 
 CanvasCamera.prototype.stop = function(onError, onSuccess) {
     this.disableRenderers();
+    this.unstreamRenderers();
+    this.sendFrameReport();
+    this.rejectFrameRequests('Capture stopped.');
     exec(function(data) {
         if (onSuccess && typeof onSuccess === 'function') {
             onSuccess(data);
@@ -461,6 +767,8 @@ CanvasCamera.prototype.flashMode = function(flashMode, onError, onSuccess) {
 CanvasCamera.prototype.cameraPosition = function(cameraFacing, onError, onSuccess) {
     this.disableRenderers();
     exec(function(data) {
+        // frames converted by the previous camera are dropped.
+        this.rejectFrameRequests('Camera stopped.');
         this.enableRenderers();
         if (onSuccess && typeof onSuccess === 'function') {
             onSuccess(data);
@@ -472,15 +780,187 @@ CanvasCamera.prototype.cameraPosition = function(cameraFacing, onError, onSucces
     }.bind(this), this.nativeClass, 'cameraPosition', [cameraFacing]);
 };
 
+CanvasCamera.prototype.configure = function(options, onError, onSuccess) {
+    exec(function(data) {
+        if (options && typeof options === 'object') {
+            for (var option in options) {
+                if (options.hasOwnProperty(option)) {
+                    this.options[option] = options[option];
+                }
+            }
+        }
+        if (onSuccess && typeof onSuccess === 'function') {
+            onSuccess(data);
+        }
+    }.bind(this), function(error) {
+        if (onError && typeof onError === 'function') {
+            onError(error);
+        }
+    }.bind(this), this.nativeClass, 'configure', [options]);
+};
+
+CanvasCamera.prototype.requestFrame = function(onError, onSuccess) {
+    exec(function(data) {
+        if (!data || typeof data.frameId !== 'number') {
+            return;
+        }
+        var frameId = data.frameId;
+        if (this.options && this.options.use === 'stream') {
+            // streamed frames never come through the capture callback.
+            if (onError && typeof onError === 'function') {
+                onError('Frame ' + frameId + ' is only sent to the stream.');
+            }
+            return;
+        }
+        // the requested frame itself comes through the capture callback.
+        this.frameRequests[frameId] = {
+            onError: onError,
+            onSuccess: onSuccess,
+            timer: window.setTimeout(function() {
+                this.rejectFrameRequest(frameId, 'Frame ' + frameId + ' expired.');
+            }.bind(this), this.frameRequestTimeout)
+        };
+    }.bind(this), function(error) {
+        if (onError && typeof onError === 'function') {
+            onError(error);
+        }
+    }.bind(this), this.nativeClass, 'requestFrame', []);
+};
+
+CanvasCamera.prototype.requestKeyframe = function() {
+    exec(function() {}, function() {}, this.nativeClass, 'keyframe', []);
+
+    return this;
+};
+
+CanvasCamera.prototype.roi = function(roi, onError, onSuccess) {
+    exec(function(data) {
+        this.options.roi = roi || null;
+        if (onSuccess && typeof onSuccess === 'function') {
+            onSuccess(data);
+        }
+    }.bind(this), function(error) {
+        if (onError && typeof onError === 'function') {
+            onError(error);
+        }
+    }.bind(this), this.nativeClass, 'roi', [roi || null]);
+};
+
+CanvasCamera.prototype.stats = function(onError, onSuccess) {
+    this.execStats('stats', onError, onSuccess);
+};
+
+CanvasCamera.prototype.resetStats = function(onError, onSuccess) {
+    this.execStats('resetStats', onError, onSuccess);
+};
+
+CanvasCamera.prototype.execStats = function(action, onError, onSuccess) {
+    if (!window.cordova || window.cordova.platformId !== 'android') {
+        // pipeline stats are only recorded on android.
+        if (onError && typeof onError === 'function') {
+            onError({ message: 'Stats are not available on this platform.' });
+        }
+        return;
+    }
+    exec(function(data) {
+        if (onSuccess && typeof onSuccess === 'function') {
+            onSuccess(data && data.stats);
+        }
+    }.bind(this), function(error) {
+        if (onError && typeof onError === 'function') {
+            onError(error);
+        }
+    }.bind(this), this.nativeClass, action, []);
+};
+
+CanvasCamera.prototype.reportFrame = function(data, state) {
+    // frames are identified on android only.
+    if (!data || typeof data.frameId !== 'number') {
+        return this;
+    }
+
+    var interval = parseFloat(this.options.frameReportInterval);
+    if (isNaN(interval)) {
+        interval = 1000;
+    }
+    if (interval <= 0) {
+        return this;
+    }
+
+    if (!this.frameReport) {
+        this.frameReport = {
+            drawn: [],
+            skipped: {
+                busy: [],
+                replaced: [],
+                failed: []
+            }
+        };
+    }
+
+    if (state === 'drawn') {
+        this.frameReport.drawn.push({
+            id: data.frameId,
+            captureTime: data.captureTime,
+            paintTime: this.now()
+        });
+    } else if (this.frameReport.skipped[state]) {
+        this.frameReport.skipped[state].push(data.frameId);
+    }
+
+    if (this.frameReport.drawn.length >= 300) {
+        this.sendFrameReport();
+    } else if (!this.frameReportTimer) {
+        this.frameReportTimer = window.setTimeout(this.sendFrameReport.bind(this), interval);
+    }
+
+    return this;
+};
+
+CanvasCamera.prototype.sendFrameReport = function() {
+    if (this.frameReportTimer) {
+        window.clearTimeout(this.frameReportTimer);
+        this.frameReportTimer = null;
+    }
+
+    var report = this.frameReport;
+    this.frameReport = null;
+
+    if (report) {
+        // paint times are sent as ages, the native side computes latencies on its own clock.
+        var now = this.now();
+        for (var i = 0; i < report.drawn.length; i++) {
+            report.drawn[i].age = now - report.drawn[i].paintTime;
+            delete report.drawn[i].paintTime;
+        }
+        exec(function() {}, function() {}, this.nativeClass, 'frameReport', [report]);
+    }
+
+    return this;
+};
+
+CanvasCamera.prototype.now = function() {
+    return (window.performance && window.performance.now) ? window.performance.now() : Date.now();
+};
+
 CanvasCamera.prototype.capture = function(data) {
+    if (arguments.length > 1) {
+        // binary images are received as additional ArrayBuffer arguments.
+        this.resolveBinaries(data, Array.prototype.slice.call(arguments, 1));
+    }
+
+    this.updateSession(data);
+
     if (data && data.output && data.output.images) {
-        if (data.output.images.fullsize && data.output.images.fullsize[this.options.use]) {
-            if (this.canvas.fullsize) {
-                this.canvas.fullsize.bufferize(data.output.images.fullsize);
-            }
-            if (data.output.images.thumbnail && data.output.images.thumbnail[this.options.use]) {
-                if (this.canvas.thumbnail) {
-                    this.canvas.thumbnail.bufferize(data.output.images.thumbnail);
+        // fullsize and thumbnail images are sent separately, as soon as each one is ready.
+        for (var name in data.output.images) {
+            if (data.output.images.hasOwnProperty(name) && this.canvas[name]) {
+                var image = data.output.images[name];
+                if (name === 'fullsize' && image && typeof image.keyframe === 'boolean') {
+                    // delta frames carry either a keyframe or the tiles that changed.
+                    this.canvas.fullsize.patch(image);
+                } else if (image && image[this.canvas[name].getUse()]) {
+                    this.canvas[name].bufferize(image);
                 }
             }
         }
@@ -489,6 +969,106 @@ CanvasCamera.prototype.capture = function(data) {
     if (this.onCapture && typeof this.onCapture === 'function') {
         this.onCapture(data);
     }
+
+    this.resolveFrameRequest(data);
+};
+
+CanvasCamera.prototype.resolveFrameRequest = function(data) {
+    if (data && data.output && data.output.images && data.output.images.fullsize) {
+        var frameId = data.output.images.fullsize.frameId;
+        if (typeof frameId === 'number') {
+            // frames are delivered in capture order, older requested frames were discarded.
+            for (var id in this.frameRequests) {
+                if (this.frameRequests.hasOwnProperty(id) && Number(id) < frameId) {
+                    this.rejectFrameRequest(id, 'Frame ' + id + ' was discarded, a newer frame was delivered.');
+                }
+            }
+            var request = this.frameRequests[frameId];
+            if (request) {
+                window.clearTimeout(request.timer);
+                delete this.frameRequests[frameId];
+                if (request.onSuccess && typeof request.onSuccess === 'function') {
+                    request.onSuccess(data);
+                }
+            }
+        }
+    }
+
+    return this;
+};
+
+CanvasCamera.prototype.rejectFrameRequest = function(frameId, error) {
+    var request = this.frameRequests[frameId];
+    if (request) {
+        window.clearTimeout(request.timer);
+        delete this.frameRequests[frameId];
+        if (request.onError && typeof request.onError === 'function') {
+            request.onError(error);
+        }
+    }
+
+    return this;
+};
+
+CanvasCamera.prototype.rejectFrameRequests = function(error) {
+    for (var frameId in this.frameRequests) {
+        if (this.frameRequests.hasOwnProperty(frameId)) {
+            this.rejectFrameRequest(frameId, error);
+        }
+    }
+
+    return this;
+};
+
+CanvasCamera.prototype.updateSession = function(data) {
+    if (data) {
+        if (data.options || data.preview) {
+            // session configuration, sent on start and after each change.
+            this.session = {
+                options: data.options,
+                preview: data.preview,
+                stream: data.stream
+            };
+            if (data.stream) {
+                this.streamRenderers(data.stream);
+            }
+            if (data.options && data.options.renditions) {
+                this.setRenditionRenderers(data.options.renditions);
+            }
+        } else if (this.session) {
+            // frame messages only carry output data.
+            data.options = this.session.options;
+            data.preview = this.session.preview;
+            data.stream = this.session.stream;
+        }
+    }
+
+    return this;
+};
+
+CanvasCamera.prototype.resolveBinaries = function(data, binaries) {
+    if (data && data.output && data.output.images) {
+        for (var image in data.output.images) {
+            if (data.output.images.hasOwnProperty(image)) {
+                var output = data.output.images[image];
+                // each image, rendition or tile refers to its binary part by index.
+                ['binary', 'rgba', 'luma'].forEach(function(use) {
+                    if (output && typeof output[use] === 'number') {
+                        output[use] = binaries[output[use] - 1] || null;
+                    }
+                    if (output && output.tiles) {
+                        for (var i = 0; i < output.tiles.length; i++) {
+                            if (typeof output.tiles[i][use] === 'number') {
+                                output.tiles[i][use] = binaries[output.tiles[i][use] - 1] || null;
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    return this;
 };
 
 CanvasCamera.prototype.enableRenderers = function() {
@@ -515,11 +1095,61 @@ CanvasCamera.prototype.disableRenderers = function() {
     }
 };
 
+CanvasCamera.prototype.setRenditionRenderers = function(renditions) {
+    for (var i = 0; i < renditions.length; i++) {
+        var renderer = this.canvas[renditions[i].name];
+        if (renderer) {
+            // the native side reports the use of each rendition, its format or its transport.
+            renderer.use = renditions[i].use;
+        }
+    }
+
+    return this;
+};
+
+CanvasCamera.prototype.streamRenderers = function(stream) {
+    if (this.canvas && typeof this.canvas === 'object') {
+        for (var renderer in this.canvas) {
+            if(this.canvas.hasOwnProperty(renderer)) {
+                if (stream[renderer]) {
+                    this.canvas[renderer].stream(stream[renderer]);
+                }
+            }
+        }
+    }
+};
+
+CanvasCamera.prototype.unstreamRenderers = function() {
+    if (this.canvas && typeof this.canvas === 'object') {
+        for (var renderer in this.canvas) {
+            if(this.canvas.hasOwnProperty(renderer)) {
+                this.canvas[renderer].unstream();
+            }
+        }
+    }
+};
+
 CanvasCamera.prototype.setRenderingPresets = function() {
 
     this.dispatch('beforerenderingpresets', this);
 
     switch (this.options.use) {
+        case 'binary':
+            if (!window.cordova || window.cordova.platformId !== 'android' || !window.Blob || !window.URL) {
+                this.options.use = 'data';
+            }
+        break;
+        case 'rgba':
+        case 'luma':
+            if (!window.cordova || window.cordova.platformId !== 'android' || !window.ImageData) {
+                this.options.use = 'data';
+            }
+        break;
+        case 'stream':
+            if (!window.cordova || window.cordova.platformId !== 'android') {
+                this.options.use = 'data';
+            }
+        break;
         case 'data':
         case 'file':
         break;
@@ -615,6 +1245,16 @@ CanvasCamera.prototype.setRenderersSize = function(size) {
                   height: parseFloat((parseFloat(size.height) * parseFloat(this.options.thumbnailRatio)))
               });
           }
+          if (this.options.renditions && this.options.renditions.length) {
+              this.options.renditions.forEach(function(rendition) {
+                  if (rendition && this.canvas[rendition.name]) {
+                      this.canvas[rendition.name].setSize({
+                          width: parseFloat(rendition.width || size.width),
+                          height: parseFloat(rendition.height || size.height)
+                      });
+                  }
+              }.bind(this));
+          }
       }
   }
 